@@ -0,0 +1,70 @@
+package chip8.benchmark;
+
+import chip8.CPU;
+import chip8.Instruction;
+import chip8.Memory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+    CPU.tick() for a single instruction of every opcode family. The
+    instruction sits at 0x200 and PC is moved back to it before each tick.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CPUBenchmark {
+
+    // every valid family of Instruction.FAMILIES, checked by setup()
+    @Param({"00E0", "00EE", "0NNN", "1NNN", "2NNN", "3XNN", "4XNN", "5XY0", "6XNN", "7XNN",
+            "8XY0", "8XY1", "8XY2", "8XY3", "8XY4", "8XY5", "8XY6", "8XY7", "8XYE", "9XY0",
+            "ANNN", "BNNN", "CXNN", "DXYN", "EX9E", "EXA1",
+            "FX07", "FX0A", "FX15", "FX18", "FX1E", "FX29", "FX33", "FX55", "FX65"})
+    public String family;
+
+    private CPU cpu;
+    private Memory memory;
+
+    @Setup
+    public void setup() throws NoSuchFieldException {
+        List<String> families = new ArrayList<>(Arrays.asList(Instruction.FAMILIES));
+        families.remove(Instruction.INVALID);
+        List<String> benchmarked = Arrays.asList(CPUBenchmark.class.getField("family").getAnnotation(Param.class).value());
+        if (!benchmarked.equals(families))
+            throw new IllegalStateException("The families benchmarked aren't those of Instruction.FAMILIES");
+
+        cpu = new CPU();
+        memory = cpu.getMemory();
+
+        // jumps and calls go back to 0x200, X = 1, Y = 2, N = 5, NN = 0x34
+        String hex = family
+                .replace("NNN", "200")
+                .replace("NN", "34")
+                .replace("X", "1")
+                .replace("Y", "2")
+                .replace("N", "5");
+        int opcode = Integer.parseInt(hex, 16);
+        if (!CPU.decode((char) opcode).getFamilyName().equals(family))
+            throw new IllegalStateException(hex + " isn't of family " + family);
+
+        memory.loadProgram(new byte[] {(byte) (opcode >>> 8), (byte) opcode});
+        memory.stack[1] = 0x200;
+        memory.I = 0x300;
+        memory.V[1] = 0x0C; // a valid key for EX9E / EXA1
+        memory.V[2] = 0x07;
+    }
+
+    @Benchmark
+    public void tick() {
+        memory.PC = 0x200;
+        memory.SP = 1;
+        cpu.tick();
+    }
+}
@@ -0,0 +1,40 @@
+package chip8.benchmark;
+
+import chip8.Memory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MemoryBenchmark {
+
+    private Memory memory;
+    private byte[] program;
+
+    @Setup
+    public void setup() {
+        memory = new Memory();
+
+        // the largest program fitting in RAM
+        program = new byte[Memory.RAM_SIZE - Memory.PROGRAM_START];
+        new Random(8).nextBytes(program);
+    }
+
+    @Benchmark
+    public Memory loadProgram() {
+        memory.loadProgram(program);
+        return memory;
+    }
+
+    @Benchmark
+    public Memory clear() {
+        memory.clear();
+        return memory;
+    }
+}
@@ -0,0 +1,54 @@
+package chip8.benchmark;
+
+import chip8.CHIP8;
+import chip8.Screen;
+import chip8.app.screen.ScreenApp;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+    ScreenApp.render() of a half lit frame, after a sprite row changed
+    and with nothing changed. Only builds the drawing commands of the
+    canvas, nothing is shown on a display.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RenderBenchmark {
+
+    private ScreenApp screenApp;
+    private Screen screen;
+
+    @Setup
+    public void setup() {
+        CHIP8 chip8 = new CHIP8();
+        screen = chip8.getCpu().getScreen();
+
+        Random random = new Random(8);
+        for (int y = 0; y < Screen.HEIGHT; ++y)
+            for (int x = 0; x < Screen.WIDTH; ++x)
+                if (random.nextBoolean())
+                    screen.setPixel(x, y);
+
+        screenApp = new ScreenApp(chip8, 800, 400);
+        screenApp.render();
+    }
+
+    @Benchmark
+    public ScreenApp renderSpriteRow() {
+        screen.xorRow(12, 0x00FF_0000_0000_0000L);
+        screenApp.render();
+        return screenApp;
+    }
+
+    @Benchmark
+    public ScreenApp renderUnchanged() {
+        screenApp.render();
+        return screenApp;
+    }
+}
@@ -0,0 +1,50 @@
+package chip8.benchmark;
+
+import chip8.CPU;
+import chip8.Instruction;
+import chip8.Memory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+    DXYN alone, for different sprite heights, drawn either fully
+    on screen or across the bottom right corner so it wraps around.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SpriteBenchmark {
+
+    @Param({"1", "5", "8", "15"})
+    public int height;
+
+    @Param({"false", "true"})
+    public boolean wraparound;
+
+    private CPU cpu;
+    private Instruction instruction;
+
+    @Setup
+    public void setup() {
+        cpu = new CPU();
+        Memory memory = cpu.getMemory();
+
+        memory.I = 0x300;
+        for (int i = 0; i < 15; ++i)
+            memory.RAM[0x300 + i] = (byte) (0xA5 ^ (i * 0x11));
+
+        memory.V[0] = (byte) (wraparound ? 60 : 20);
+        memory.V[1] = (byte) (wraparound ? 30 : 10);
+
+        instruction = CPU.decode((char) (0xD010 | height));
+    }
+
+    @Benchmark
+    public void draw() {
+        cpu.opcodeDXYN(instruction);
+    }
+}
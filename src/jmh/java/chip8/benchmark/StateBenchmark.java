@@ -0,0 +1,75 @@
+package chip8.benchmark;
+
+import chip8.CHIP8;
+import chip8.CPU;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StateBenchmark {
+
+    private CHIP8 chip8;
+    private CHIP8 branch;
+    private File savedState;
+    private File newState;
+
+    @Setup
+    public void setup() throws IOException {
+        chip8 = new CHIP8();
+
+        byte[] program = new byte[1024];
+        new Random(8).nextBytes(program);
+        chip8.getCpu().getMemory().loadProgram(program);
+
+        for (int i = 0; i < 200; ++i)
+            chip8.getCpu().getScreen().flipPixel((i * 7) % 64, (i * 3) % 32);
+
+        savedState = File.createTempFile("chip8-state", ".sav");
+        newState = File.createTempFile("chip8-state", ".sav");
+        chip8.saveState(savedState);
+
+        branch = chip8.copy();
+    }
+
+    @TearDown
+    public void tearDown() {
+        savedState.delete();
+        newState.delete();
+    }
+
+    @Benchmark
+    public void saveState() throws IOException {
+        chip8.saveState(newState);
+    }
+
+    @Benchmark
+    public CPU loadState() throws IOException {
+        chip8.loadState(savedState);
+        return chip8.getCpu();
+    }
+
+    @Benchmark
+    public CHIP8 copyFrom() {
+        branch.copyFrom(chip8);
+        return branch;
+    }
+
+    @Benchmark
+    public long stateHash() {
+        return chip8.stateHash();
+    }
+
+    @Benchmark
+    public CPU jsonCopy() {
+        return new CPU(chip8.getCpu().toString());
+    }
+}
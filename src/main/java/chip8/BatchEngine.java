@@ -0,0 +1,662 @@
+package chip8;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/*
+    Runs many instances of one ROM in lockstep, with the state of all of
+    them in primitive arrays indexed by instance (structure of arrays)
+    instead of a CPU, Memory, Screen and Keyboard each.
+
+    RAM is split into 256 byte pages. Every instance has a table of them,
+    all pointing at the pages of the RomImage of the program, shared with
+    every other holder of it, until the instance writes one, which it then
+    gets its own copy of. Instructions on pages nobody has written are
+    decoded once for all, by address, others by opcode - both with
+    CPU.decode(). Each cycle the instances at the same address of such
+    code run together: its instruction is dispatched once for the group,
+    then applied to each of them. close() releases the image.
+
+    Instructions behave as in CPU. An instance which executes an invalid
+    opcode or goes out of RAM or of the stack fails: it stops there and
+    keeps the error, the others go on. Unlike an Engine it isn't bound
+    to a CPU; copyTo() gives the state of an instance as one.
+ */
+public class BatchEngine implements AutoCloseable {
+
+    private static final int PAGE_SIZE = Memory.PAGE_SIZE;
+    private static final int PAGES = Memory.PAGES;
+
+    @Getter
+    private final int size;
+
+    // the ROM image shared by every instance and its instructions, decoded on first use
+    private final RomImage image;
+    private final byte[][] romPages = new byte[PAGES][];
+    private final Instruction[] romInstructions;
+    // every opcode decoded, for code on written pages
+    private final Instruction[] opcodes = new Instruction[0x10000];
+
+    // instance i has its values at [i], or [i * n .. i * n + n) for arrays of n
+    private final byte[][] pages;
+    private final byte[][] sparePages; // own copies of pages, kept across resets
+    private final byte[] V;
+    private final char[] I;
+    private final char[] PC;
+    private final char[] stack;
+    private final byte[] SP;
+    private final char[] delayTimer;
+    private final char[] soundTimer;
+    private final long[] rows;
+    private final int[] keys;
+    private final long[] rngStates;
+    private final String[] errors;
+
+    // the instances at each address of code read from the image this cycle, as linked lists
+    private final int[] firstAt = new int[Memory.RAM_SIZE];
+    private final int[] nextAt;
+    private final char[] groupPCs; // the addresses with instances, in the order found
+    private final int[] group; // the instances executing an instruction
+
+    private boolean closed = false;
+
+    public BatchEngine(byte[] program, int size) {
+        if (program.length > Memory.MAX_PROGRAM_SIZE)
+            throw new IllegalArgumentException("Program too large: " + program.length + " bytes");
+        if (size <= 0)
+            throw new IllegalArgumentException("size: " + size);
+
+        this.size = size;
+
+        image = RomImage.acquire(program);
+        for (int page = 0; page < PAGES; ++page)
+            romPages[page] = image.getPage(page);
+        romInstructions = image.instructions;
+
+        pages = new byte[size * PAGES][];
+        sparePages = new byte[size * PAGES][];
+        V = new byte[size * 16];
+        I = new char[size];
+        PC = new char[size];
+        stack = new char[size * 16];
+        SP = new byte[size];
+        delayTimer = new char[size];
+        soundTimer = new char[size];
+        rows = new long[size * Screen.HEIGHT];
+        keys = new int[size];
+        rngStates = new long[size];
+        errors = new String[size];
+
+        Arrays.fill(firstAt, -1);
+        nextAt = new int[size];
+        groupPCs = new char[size];
+        group = new int[size];
+
+        for (int i = 0; i < size; ++i)
+            reset(i, i);
+    }
+
+    /***
+     * Resets every instance, instance i with the RNG seeded with seed + i.
+     */
+    public void reset(long seed) {
+        for (int i = 0; i < size; ++i)
+            reset(i, seed + i);
+    }
+
+    /***
+     * Puts the instance in the state of the program just loaded, with no key pressed.
+     */
+    public void reset(int i, long seed) {
+        System.arraycopy(romPages, 0, pages, i * PAGES, PAGES);
+        Arrays.fill(V, i * 16, i * 16 + 16, (byte) 0);
+        I[i] = 0;
+        PC[i] = Memory.PROGRAM_START;
+        Arrays.fill(stack, i * 16, i * 16 + 16, (char) 0);
+        SP[i] = 0;
+        delayTimer[i] = 0;
+        soundTimer[i] = 0;
+        Arrays.fill(rows, i * Screen.HEIGHT, (i + 1) * Screen.HEIGHT, 0);
+        keys[i] = 0;
+        rngStates[i] = seed;
+        errors[i] = null;
+    }
+
+    public void setKeys(int i, int mask) {
+        keys[i] = mask & 0xFFFF;
+    }
+
+    public int getKeys(int i) {
+        return keys[i];
+    }
+
+    /***
+     * Runs one 60 Hz frame of every instance: the given number of
+     * cycles, then a timers tick.
+     */
+    public void frame(int cyclesPerFrame) {
+        run(cyclesPerFrame);
+        timersTick();
+    }
+
+    /***
+     * Every instance which hasn't failed executes the given number of instructions,
+     * all of them one instruction after the other.
+     */
+    public void run(int cycles) {
+        for (int cycle = 0; cycle < cycles; ++cycle) {
+            int groups = 0;
+
+            // backwards, so that every group lists its instances in order
+            for (int i = size - 1; i >= 0; --i) {
+                if (errors[i] != null)
+                    continue;
+
+                int pc = PC[i];
+                if (pc + 1 >= Memory.RAM_SIZE) {
+                    fail(i, "PC out of RAM");
+                } else if (isShared(i, pc) && isShared(i, pc + 1)) {
+                    if (firstAt[pc] == -1)
+                        groupPCs[groups++] = (char) pc;
+                    nextAt[i] = firstAt[pc];
+                    firstAt[pc] = i;
+                } else {
+                    char opcode = opcodeAt(i, pc);
+                    Instruction instruction = opcodes[opcode];
+                    if (instruction == null)
+                        instruction = opcodes[opcode] = CPU.decode(opcode);
+
+                    group[0] = i;
+                    execute(1, instruction);
+                }
+            }
+
+            for (int g = 0; g < groups; ++g) {
+                int pc = groupPCs[g];
+                int count = 0;
+                for (int i = firstAt[pc]; i != -1; i = nextAt[i])
+                    group[count++] = i;
+                firstAt[pc] = -1;
+
+                Instruction instruction = romInstructions[pc];
+                if (instruction == null)
+                    instruction = romInstructions[pc] = CPU.decode(opcodeAt(group[0], pc));
+
+                execute(count, instruction);
+            }
+        }
+    }
+
+    public void timersTick() {
+        for (int i = 0; i < size; ++i) {
+            if (soundTimer[i] > 0)
+                --soundTimer[i];
+            if (delayTimer[i] > 0)
+                --delayTimer[i];
+        }
+    }
+
+    // whether the instance still has the page of the address from the image
+    private boolean isShared(int i, int address) {
+        return pages[i * PAGES + (address >>> 8)] == romPages[address >>> 8];
+    }
+
+    private char opcodeAt(int i, int address) {
+        return (char) ((read(i, address) << 8) | read(i, address + 1));
+    }
+
+    private int read(int i, int address) {
+        return pages[i * PAGES + (address >>> 8)][address & 0xFF] & 0xFF;
+    }
+
+    private void write(int i, int address, int value) {
+        int slot = i * PAGES + (address >>> 8);
+        byte[] page = pages[slot];
+
+        if (page == romPages[address >>> 8]) { // first write since the reset
+            byte[] copy = sparePages[slot];
+            if (copy == null)
+                copy = sparePages[slot] = new byte[PAGE_SIZE];
+            System.arraycopy(page, 0, copy, 0, PAGE_SIZE);
+            pages[slot] = page = copy;
+        }
+
+        page[address & 0xFF] = (byte) value;
+    }
+
+    private void fail(int i, String error) {
+        errors[i] = error;
+    }
+
+    private void failAll(int count, String error) {
+        for (int k = 0; k < count; ++k)
+            fail(group[k], error);
+    }
+
+    /*
+        Executes the instruction for the first count instances of group,
+        all at it: the opcode is dispatched once, then applied to each.
+        Instances which don't jump or fail move on to the next instruction.
+     */
+    private void execute(int count, Instruction instruction) {
+        char opcode = instruction.opcode;
+        int X = instruction.X;
+        int Y = instruction.Y;
+
+        switch (opcode & 0xF000) {
+            case 0x0000:
+                if ((opcode & 0x00FF) == 0xEE) {
+                    for (int k = 0; k < count; ++k) {
+                        int i = group[k];
+                        if (SP[i] < 0) {
+                            fail(i, "Stack underflow");
+                        } else {
+                            PC[i] = stack[i * 16 + SP[i]];
+                            --SP[i];
+                        }
+                    }
+                    return;
+                }
+                if ((opcode & 0x00FF) == 0xE0) {
+                    for (int k = 0; k < count; ++k) {
+                        int i = group[k];
+                        Arrays.fill(rows, i * Screen.HEIGHT, (i + 1) * Screen.HEIGHT, 0);
+                    }
+                }
+                break;
+
+            case 0x1000:
+                for (int k = 0; k < count; ++k)
+                    PC[group[k]] = (char) instruction.NNN;
+                return;
+
+            case 0x2000:
+                for (int k = 0; k < count; ++k) {
+                    int i = group[k];
+                    if (SP[i] >= 15) {
+                        fail(i, "Stack overflow");
+                    } else {
+                        ++SP[i];
+                        stack[i * 16 + SP[i]] = (char) (PC[i] + 2);
+                        PC[i] = (char) instruction.NNN;
+                    }
+                }
+                return;
+
+            case 0x3000:
+                for (int k = 0; k < count; ++k) {
+                    int i = group[k];
+                    PC[i] += V[i * 16 + X] == (byte) instruction.NN ? 4 : 2;
+                }
+                return;
+
+            case 0x4000:
+                for (int k = 0; k < count; ++k) {
+                    int i = group[k];
+                    PC[i] += V[i * 16 + X] != (byte) instruction.NN ? 4 : 2;
+                }
+                return;
+
+            case 0x5000:
+                for (int k = 0; k < count; ++k) {
+                    int i = group[k];
+                    PC[i] += V[i * 16 + X] == V[i * 16 + Y] ? 4 : 2;
+                }
+                return;
+
+            case 0x6000:
+                for (int k = 0; k < count; ++k)
+                    V[group[k] * 16 + X] = (byte) instruction.NN;
+                break;
+
+            case 0x7000:
+                for (int k = 0; k < count; ++k)
+                    V[group[k] * 16 + X] += instruction.NN;
+                break;
+
+            case 0x8000:
+                if (!instruction.isValid()) {
+                    failAll(count, "WRONG OPCODE: " + (int) opcode);
+                    return;
+                }
+                executeALU(count, opcode & 0x000F, X, Y);
+                break;
+
+            case 0x9000:
+                for (int k = 0; k < count; ++k) {
+                    int i = group[k];
+                    PC[i] += V[i * 16 + X] != V[i * 16 + Y] ? 4 : 2;
+                }
+                return;
+
+            case 0xA000:
+                for (int k = 0; k < count; ++k)
+                    I[group[k]] = (char) instruction.NNN;
+                break;
+
+            case 0xB000:
+                for (int k = 0; k < count; ++k) {
+                    int i = group[k];
+                    PC[i] = (char) (instruction.NNN + (V[i * 16] & 0xFF));
+                }
+                return;
+
+            case 0xC000:
+                for (int k = 0; k < count; ++k) {
+                    int i = group[k];
+                    V[i * 16 + X] = (byte) (instruction.NN & (int) (Rng.mix(rngStates[i] += 0x9E3779B97F4A7C15L) >>> 56));
+                }
+                break;
+
+            case 0xD000:
+                for (int k = 0; k < count; ++k) {
+                    int i = group[k];
+                    draw(i, V[i * 16 + X] & 0xFF, V[i * 16 + Y] & 0xFF, instruction.N);
+                }
+                break;
+
+            case 0xE000: {
+                if (!instruction.isValid()) {
+                    failAll(count, "WRONG OPCODE: " + (int) opcode);
+                    return;
+                }
+                boolean skipIfPressed = (opcode & 0x00FF) == 0x9E;
+                for (int k = 0; k < count; ++k) {
+                    int i = group[k];
+                    int key = V[i * 16 + X];
+                    if (key < 0 || key >= Keyboard.NUMBER_OF_KEYS) {
+                        fail(i, "Key out of range: " + key);
+                    } else {
+                        boolean pressed = (keys[i] & (1 << key)) != 0;
+                        PC[i] += pressed == skipIfPressed ? 4 : 2;
+                    }
+                }
+                return;
+            }
+
+            case 0xF000:
+                if (!executeMisc(count, instruction))
+                    return;
+                break;
+        }
+
+        for (int k = 0; k < count; ++k) {
+            int i = group[k];
+            if (errors[i] == null)
+                PC[i] += 2;
+        }
+    }
+
+    // 8XYN, with VF set before VX like CPU does
+    private void executeALU(int count, int operation, int X, int Y) {
+        switch (operation) {
+            case 0x0:
+                for (int k = 0; k < count; ++k) {
+                    int v = group[k] * 16;
+                    V[v + X] = V[v + Y];
+                }
+                break;
+            case 0x1:
+                for (int k = 0; k < count; ++k) {
+                    int v = group[k] * 16;
+                    V[v + X] |= V[v + Y];
+                }
+                break;
+            case 0x2:
+                for (int k = 0; k < count; ++k) {
+                    int v = group[k] * 16;
+                    V[v + X] &= V[v + Y];
+                }
+                break;
+            case 0x3:
+                for (int k = 0; k < count; ++k) {
+                    int v = group[k] * 16;
+                    V[v + X] ^= V[v + Y];
+                }
+                break;
+            case 0x4:
+                for (int k = 0; k < count; ++k) {
+                    int v = group[k] * 16;
+                    int VX = V[v + X] & 0xFF;
+                    int VY = V[v + Y] & 0xFF;
+                    V[v + 0xF] = (byte) (VX + VY >= 0xFF ? 1 : 0);
+                    V[v + X] = (byte) ((V[v + X] & 0xFF) + (V[v + Y] & 0xFF));
+                }
+                break;
+            case 0x5:
+                for (int k = 0; k < count; ++k) {
+                    int v = group[k] * 16;
+                    int VX = V[v + X] & 0xFF;
+                    int VY = V[v + Y] & 0xFF;
+                    V[v + 0xF] = (byte) (VX > VY ? 1 : 0);
+                    V[v + X] = (byte) ((V[v + X] & 0xFF) - (V[v + Y] & 0xFF));
+                }
+                break;
+            case 0x6:
+                for (int k = 0; k < count; ++k) {
+                    int v = group[k] * 16;
+                    V[v + 0xF] = (byte) (V[v + X] & 0x01);
+                    V[v + X] = (byte) ((V[v + X] & 0xFF) >>> 1);
+                }
+                break;
+            case 0x7:
+                for (int k = 0; k < count; ++k) {
+                    int v = group[k] * 16;
+                    int VX = V[v + X] & 0xFF;
+                    int VY = V[v + Y] & 0xFF;
+                    V[v + 0xF] = (byte) (VY > VX ? 1 : 0);
+                    V[v + X] = (byte) ((V[v + Y] & 0xFF) - (V[v + X] & 0xFF));
+                }
+                break;
+            case 0xE:
+                for (int k = 0; k < count; ++k) {
+                    int v = group[k] * 16;
+                    V[v + 0xF] = (byte) ((V[v + X] & 0x80) >>> 7);
+                    V[v + X] = (byte) ((V[v + X] & 0xFF) << 1);
+                }
+                break;
+        }
+    }
+
+    // DXYN of one instance, which fails if the sprite is out of RAM
+    private void draw(int i, int x, int y, int height) {
+        int address = I[i];
+        if (address + height > Memory.RAM_SIZE) {
+            fail(i, "Sprite out of RAM");
+            return;
+        }
+
+        int screen = i * Screen.HEIGHT;
+        boolean collision = false;
+        for (int line = 0; line < height; ++line) {
+            long bits = Long.rotateRight((long) read(i, address + line) << 56, x);
+            int row = screen + (line + y) % Screen.HEIGHT;
+
+            if ((rows[row] & bits) != 0)
+                collision = true;
+            rows[row] ^= bits;
+        }
+
+        V[i * 16 + 0xF] = (byte) (collision ? 1 : 0);
+    }
+
+    // FXNN, false if it moved the PCs on itself
+    private boolean executeMisc(int count, Instruction instruction) {
+        int X = instruction.X;
+
+        switch (instruction.opcode & 0x00FF) {
+            case 0x07:
+                for (int k = 0; k < count; ++k) {
+                    int i = group[k];
+                    V[i * 16 + X] = (byte) (delayTimer[i] & 0xFF);
+                }
+                return true;
+
+            case 0x0A:
+                for (int k = 0; k < count; ++k) {
+                    int i = group[k];
+                    if (keys[i] != 0) { // otherwise waits at it
+                        V[i * 16 + X] = (byte) Integer.numberOfTrailingZeros(keys[i]);
+                        PC[i] += 2;
+                    }
+                }
+                return false;
+
+            case 0x15:
+                for (int k = 0; k < count; ++k) {
+                    int i = group[k];
+                    delayTimer[i] = (char) (V[i * 16 + X] & 0xFF);
+                }
+                return true;
+
+            case 0x18:
+                for (int k = 0; k < count; ++k) {
+                    int i = group[k];
+                    soundTimer[i] = (char) (V[i * 16 + X] & 0xFF);
+                }
+                return true;
+
+            case 0x1E:
+                for (int k = 0; k < count; ++k) {
+                    int i = group[k];
+                    I[i] += V[i * 16 + X] & 0xFF;
+                }
+                return true;
+
+            case 0x29:
+                for (int k = 0; k < count; ++k) {
+                    int i = group[k];
+                    I[i] = (char) (5 * (V[i * 16 + X] & 0xFF));
+                }
+                return true;
+
+            case 0x33:
+                for (int k = 0; k < count; ++k) {
+                    int i = group[k];
+                    int VX = V[i * 16 + X] & 0xFF;
+                    int address = I[i];
+                    if (address + 3 > Memory.RAM_SIZE) {
+                        fail(i, "Memory access out of RAM");
+                    } else {
+                        write(i, address, VX / 100);
+                        write(i, address + 1, (VX / 10) % 10);
+                        write(i, address + 2, VX % 10);
+                    }
+                }
+                return true;
+
+            case 0x55:
+                for (int k = 0; k < count; ++k) {
+                    int i = group[k];
+                    int address = I[i];
+                    if (address + X + 1 > Memory.RAM_SIZE) {
+                        fail(i, "Memory access out of RAM");
+                    } else {
+                        for (int r = 0; r <= X; ++r)
+                            write(i, address + r, V[i * 16 + r]);
+                    }
+                }
+                return true;
+
+            case 0x65:
+                for (int k = 0; k < count; ++k) {
+                    int i = group[k];
+                    int address = I[i];
+                    if (address + X + 1 > Memory.RAM_SIZE) {
+                        fail(i, "Memory access out of RAM");
+                    } else {
+                        for (int r = 0; r <= X; ++r)
+                            V[i * 16 + r] = (byte) read(i, address + r);
+                    }
+                }
+                return true;
+
+            default:
+                failAll(count, "WRONG OPCODE: " + (int) instruction.opcode);
+                return false;
+        }
+    }
+
+    public boolean isFailed(int i) {
+        return errors[i] != null;
+    }
+
+    /***
+     * Why the instance stopped, null if it didn't.
+     */
+    public String getError(int i) {
+        return errors[i];
+    }
+
+    public int getPC(int i) {
+        return PC[i];
+    }
+
+    public int getI(int i) {
+        return I[i];
+    }
+
+    public int getV(int i, int register) {
+        return V[i * 16 + register] & 0xFF;
+    }
+
+    public int getRAM(int i, int address) {
+        return read(i, address);
+    }
+
+    public long getRow(int i, int y) {
+        return rows[i * Screen.HEIGHT + y];
+    }
+
+    public void copyRows(int i, long[] destination) {
+        System.arraycopy(rows, i * Screen.HEIGHT, destination, 0, Screen.HEIGHT);
+    }
+
+    /***
+     * Number of RAM pages instances have their own copy of, the others are shared.
+     */
+    public int getOwnPages() {
+        int result = 0;
+        for (int slot = 0; slot < pages.length; ++slot) {
+            if (pages[slot] != romPages[slot % PAGES])
+                ++result;
+        }
+
+        return result;
+    }
+
+    /***
+     * Releases the ROM image, the instances can still be read and run.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            image.release();
+        }
+    }
+
+    /***
+     * Puts the CPU in the state of the instance.
+     */
+    public void copyTo(int i, CPU cpu) {
+        Memory memory = cpu.getMemory();
+        for (int page = 0; page < PAGES; ++page)
+            System.arraycopy(pages[i * PAGES + page], 0, memory.RAM, page * PAGE_SIZE, PAGE_SIZE);
+        System.arraycopy(V, i * 16, memory.V, 0, 16);
+        memory.I = I[i];
+        memory.PC = PC[i];
+        System.arraycopy(stack, i * 16, memory.stack, 0, 16);
+        memory.SP = SP[i];
+        memory.delayTimer = delayTimer[i];
+        memory.soundTimer = soundTimer[i];
+        memory.notifyWrite(0, Memory.RAM_SIZE);
+
+        long[] screen = new long[Screen.HEIGHT];
+        copyRows(i, screen);
+        cpu.getScreen().setRows(screen);
+        cpu.getKeyboard().setMask(keys[i]);
+        cpu.getRNG().setState(rngStates[i]);
+    }
+}
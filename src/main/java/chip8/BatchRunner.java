@@ -0,0 +1,256 @@
+package chip8;
+
+import lombok.Getter;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/*
+    Runs many independent CHIP8 instances in parallel on a fork-join pool,
+    e.g. a ROM compatibility suite or one ROM with many input scripts.
+    Every job gets its own CHIP8 with a seeded RNG, so the results are the
+    same whatever the number of threads.
+ */
+public class BatchRunner {
+
+    public static class Job {
+
+        @Getter
+        private final String name;
+        private final byte[] program;
+        @Getter
+        private final long seed;
+        @Getter
+        private final long frames;
+        @Getter
+        private final int cyclesPerFrame;
+        private final int[] keyMasks;
+
+        /***
+         * keyMasks[i] holds the keys pressed during frame i (bit k for key k),
+         * the last mask is held until the end. May be null for no input.
+         */
+        public Job(String name, byte[] program, long seed, long frames, int cyclesPerFrame, int[] keyMasks) {
+            if (program.length > Memory.MAX_PROGRAM_SIZE)
+                throw new IllegalArgumentException("Program too large: " + name);
+            if (frames < 0 || cyclesPerFrame <= 0)
+                throw new IllegalArgumentException("frames: " + frames + ", cyclesPerFrame: " + cyclesPerFrame);
+
+            this.name = name;
+            this.program = program;
+            this.seed = seed;
+            this.frames = frames;
+            this.cyclesPerFrame = cyclesPerFrame;
+            this.keyMasks = keyMasks;
+        }
+
+        public Job(String name, byte[] program, long seed, long frames, int cyclesPerFrame) {
+            this(name, program, seed, frames, cyclesPerFrame, null);
+        }
+
+        /***
+         * A job replaying the recorded session of the program.
+         */
+        public static Job fromRecording(String name, byte[] program, InputRecording recording) {
+            if (InputRecording.checksum(program) != recording.getRomChecksum())
+                throw new IllegalArgumentException("The recording is of another ROM: " + name);
+
+            return new Job(name, program, recording.getSeed(), recording.getFrames(),
+                    recording.getCyclesPerFrame(), recording.getMasks());
+        }
+
+        public static Job fromFile(File rom, long seed, long frames, int cyclesPerFrame) throws IOException {
+            byte[] program = FileUtils.readFileToByteArray(rom);
+            if (program.length > Memory.MAX_PROGRAM_SIZE)
+                throw new IOException("ROM too large: " + rom + " (" + program.length + " bytes)");
+
+            return new Job(rom.getName(), program, seed, frames, cyclesPerFrame);
+        }
+    }
+
+    @Getter
+    public static class Result {
+
+        private final String name;
+        private final long screenChecksum;
+        private final long memoryChecksum;
+        private final long instructions;
+        private final long skippedInstructions; // of those, skipped in idle loops
+        private final long wallNanos;
+        private final String error; // null if the run finished
+
+        Result(String name, long screenChecksum, long memoryChecksum, long instructions, long skippedInstructions,
+               long wallNanos, String error) {
+            this.name = name;
+            this.screenChecksum = screenChecksum;
+            this.memoryChecksum = memoryChecksum;
+            this.instructions = instructions;
+            this.skippedInstructions = skippedInstructions;
+            this.wallNanos = wallNanos;
+            this.error = error;
+        }
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s\t%08X\t%08X\t%d\t%d\t%d ms\t%s", name, screenChecksum, memoryChecksum,
+                    instructions, skippedInstructions, wallNanos / 1_000_000, error == null ? "OK" : error);
+        }
+    }
+
+    private final ForkJoinPool pool;
+
+    public BatchRunner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchRunner(int threads) {
+        pool = new ForkJoinPool(threads);
+    }
+
+    public int getThreads() {
+        return pool.getParallelism();
+    }
+
+    /***
+     * Runs the jobs and returns their results in the same order.
+     */
+    public List<Result> run(List<Job> jobs) throws InterruptedException {
+        List<Callable<Result>> tasks = new ArrayList<>(jobs.size());
+        for (Job job : jobs)
+            tasks.add(() -> run(job));
+
+        List<Result> results = new ArrayList<>(jobs.size());
+        for (Future<Result> future : pool.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause()); // run() doesn't throw
+            }
+        }
+
+        return results;
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /***
+     * Runs one job on the calling thread.
+     */
+    public static Result run(Job job) {
+        CHIP8 chip8 = new CHIP8();
+        chip8.getCpu().setRNG(new Rng(job.seed));
+        chip8.loadProgram(job.program);
+
+        Keyboard keyboard = chip8.getCpu().getKeyboard();
+        long executed = 0;
+        String error = null;
+
+        long start = System.nanoTime();
+        try {
+            for (long frame = 0; frame < job.frames; ++frame) {
+                if (job.keyMasks != null && frame < job.keyMasks.length)
+                    keyboard.setMask(job.keyMasks[(int) frame]);
+
+                executed += chip8.frame(job.cyclesPerFrame);
+            }
+        } catch (RuntimeException e) { // invalid opcode, or out of RAM or of the stack
+            String fault = e instanceof IllegalStateException ? e.getMessage() : e.toString();
+            error = fault + " at PC 0x"
+                    + Integer.toHexString(chip8.getCpu().getMemory().PC).toUpperCase();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        return new Result(job.name, chip8.screenChecksum(), chip8.memoryChecksum(), executed,
+                chip8.getCpu().getSkippedInstructions(), elapsed, error);
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: BatchRunner <rom>... [--frames N] [--cycles-per-frame N]"
+                + " [--seed N] [--threads N]");
+    }
+
+    /***
+     * Runs every given ROM and prints a line per ROM:
+     * name, screen checksum, memory checksum, instructions, of those skipped
+     * in idle loops, time, status.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        List<File> roms = new ArrayList<>();
+        long frames = 3600;
+        int cyclesPerFrame = CHIP8.DEFAULT_CYCLES_PER_FRAME;
+        long seed = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                switch (args[i]) {
+                    case "--frames":
+                        frames = Long.parseLong(args[++i]);
+                        break;
+                    case "--cycles-per-frame":
+                        cyclesPerFrame = Integer.parseInt(args[++i]);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        if (args[i].startsWith("--"))
+                            throw new IllegalArgumentException("unexpected argument: " + args[i]);
+                        roms.add(new File(args[i]));
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e.getMessage());
+            printUsage();
+            System.exit(1);
+        }
+
+        if (roms.isEmpty() || frames < 0 || cyclesPerFrame <= 0 || threads <= 0) {
+            printUsage();
+            System.exit(1);
+        }
+
+        List<Job> jobs = new ArrayList<>();
+        for (File rom : roms) {
+            try {
+                jobs.add(Job.fromFile(rom, seed, frames, cyclesPerFrame));
+            } catch (IOException e) {
+                System.err.println("Can't load ROM: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        BatchRunner runner = new BatchRunner(threads);
+        long start = System.nanoTime();
+        List<Result> results = runner.run(jobs);
+        long elapsed = System.nanoTime() - start;
+        runner.shutdown();
+
+        int failed = 0;
+        for (Result result : results) {
+            System.out.println(result);
+            if (!result.isSuccessful())
+                ++failed;
+        }
+        System.out.println(results.size() + " runs, " + failed + " failed, "
+                + (elapsed / 1_000_000) + " ms on " + threads + " threads");
+
+        System.exit(failed == 0 ? 0 : 2);
+    }
+}
@@ -0,0 +1,117 @@
+package chip8;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Executes straight-line runs of code (basic blocks) compiled once into
+    arrays of decoded instructions, so the hot loop doesn't go back to RAM
+    between instructions. A block ends at the first jump, call, return,
+    skip, FX0A, or RAM write (FX33 / FX55). Blocks overlapping written RAM
+    are dropped. Idle loops are skipped to the end of the run.
+ */
+public class BlockEngine implements Engine, Memory.WriteListener {
+
+    public static final int MAX_BLOCK_LENGTH = 64;
+
+    static class Block {
+        final int start;
+        final int end;
+        final Instruction[] instructions;
+
+        Block(int start, Instruction[] instructions) {
+            this.start = start;
+            this.end = start + 2 * instructions.length;
+            this.instructions = instructions;
+        }
+    }
+
+    private final Block[] blocks = new Block[Memory.RAM_SIZE];
+
+    private Memory memory;
+
+    @Override
+    public int run(CPU cpu, int cycles) throws IllegalStateException {
+        attach(cpu.getMemory());
+
+        cpu.skipIdleLoop(0); // left by ticks outside of the engine
+
+        int executed = 0;
+        while (executed < cycles) {
+            Block block = blocks[memory.PC];
+            if (block == null)
+                block = compile(memory.PC);
+
+            Instruction[] instructions = block.instructions;
+            int length = Math.min(instructions.length, cycles - executed);
+
+            for (int i = 0; i < length; ++i)
+                instructions[i].execute(cpu);
+
+            executed += length;
+            executed += cpu.skipIdleLoop(cycles - executed); // a jump or FX0A ends a block
+        }
+
+        return executed;
+    }
+
+    public int getNumberOfBlocks() {
+        int result = 0;
+        for (Block block : blocks)
+            if (block != null)
+                ++result;
+
+        return result;
+    }
+
+    Block compile(int start) {
+        List<Instruction> instructions = new ArrayList<>();
+
+        int address = start;
+        while (instructions.size() < MAX_BLOCK_LENGTH && address + 1 < memory.RAM.length) {
+            int a = memory.RAM[address] & 0xFF;
+            int b = memory.RAM[address + 1] & 0xFF;
+            Instruction instruction = CPU.decode((char) ((a << 8) | b));
+
+            instructions.add(instruction);
+            address += 2;
+
+            if (instruction.endsBlock())
+                break;
+        }
+
+        if (instructions.isEmpty()) // PC at the very end of RAM
+            throw new IllegalStateException("PC OUT OF RAM: " + start);
+
+        Block block = new Block(start, instructions.toArray(new Instruction[0]));
+        blocks[start] = block;
+
+        return block;
+    }
+
+    private void attach(Memory memory) {
+        if (this.memory == memory)
+            return;
+
+        if (this.memory != null)
+            this.memory.removeWriteListener(this);
+
+        Arrays.fill(blocks, null);
+        this.memory = memory;
+        memory.addWriteListener(this);
+    }
+
+    @Override
+    public void onWrite(int address, int length) {
+        int writeEnd = address + length;
+        int from = Math.max(address - 2 * MAX_BLOCK_LENGTH + 1, 0);
+        int to = Math.min(writeEnd, blocks.length);
+
+        for (int start = from; start < to; ++start) {
+            Block block = blocks[start];
+            if (block != null && block.end > address)
+                blocks[start] = null;
+        }
+    }
+}
@@ -7,12 +7,42 @@ import org.apache.commons.io.FileUtils;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
 
 public class CHIP8 {
 
+    public static final int TIMERS_RATE = 60;
+    public static final int DEFAULT_CYCLES_PER_FRAME = 7;
+
     @Getter @Setter
     private CPU cpu;
 
+    @Getter @Setter
+    private Engine engine = new Interpreter();
+
+    // used instead of the engine while enabled
+    @Getter
+    private final ExecutionStats stats = new ExecutionStats();
+    private final ProfilingEngine profilingEngine = new ProfilingEngine(stats);
+
+    // used instead of the engine while any breakpoint or watchpoint is set
+    @Getter
+    private final Debugger debugger = new Debugger();
+    private final DebugEngine debugEngine = new DebugEngine(debugger);
+
+    // used instead of the engine while tracing
+    private TraceWriter traceWriter;
+    private TracingEngine tracingEngine;
+
+    @Getter @Setter
+    private RewindBuffer rewindBuffer;
+
+    @Getter
+    private InputRecording inputRecording;
+
+    private byte[] program; // the last loaded, for reset()
+    private RomImage image; // the program was loaded from, if so
+
 
     public CHIP8() {
         cpu = new CPU(new Memory(), new Keyboard(), new Screen());
@@ -24,38 +54,506 @@ public class CHIP8 {
 
     public void timersTick() {
         cpu.timersTick();
+
+        if (stats.isEnabled())
+            stats.countTimerTick();
     }
 
     public void cpuTick() throws IllegalStateException {
         cpu.tick();
     }
 
-    public void loadProgram(File file) {
-        cpu.getScreen().clear();
+    public int run(int cycles) throws IllegalStateException {
+        if (debugger.isActive())
+            return debugEngine.run(cpu, cycles);
+        if (tracingEngine != null)
+            return tracingEngine.run(cpu, cycles);
 
-        try {
-            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        return (stats.isEnabled() ? profilingEngine : engine).run(cpu, cycles);
+    }
 
-            byte[] programAsArrayOfByte = new byte[(int) file.length()];
-            input.read(programAsArrayOfByte);
+    /***
+     * Runs one 60 Hz frame: the given number of CPU cycles, then a timers tick.
+     * Keys queued on the keyboard are applied at the start.
+     */
+    public int frame(int cyclesPerFrame) throws IllegalStateException {
+        return frame(cyclesPerFrame, 0, 0);
+    }
 
-            cpu.getMemory().loadProgram(programAsArrayOfByte);
+    /***
+     * Runs one frame emulating the host time from start to end (System.nanoTime()).
+     * Keys queued before end are applied at the cycles matching their time,
+     * all at the start of the frame if start == end or while recording input.
+     *
+     * The frame is recorded for rewinding if a RewindBuffer is set.
+     * While recording input the keys are recorded after the queued ones
+     * are applied and the number of cycles is the one of the recording.
+     */
+    public int frame(int cyclesPerFrame, long start, long end) throws IllegalStateException {
+        Keyboard keyboard = cpu.getKeyboard();
+        KeyEventQueue events = keyboard.getEvents();
+        int executed = 0;
 
-            input.close();
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (inputRecording != null || start == end) {
+            while (!events.isEmpty() && (start == end || events.peekTime() - end < 0))
+                events.pollInto(keyboard);
+            if (events.isEmpty())
+                keyboard.applyOverflow();
+        }
+
+        if (inputRecording != null) {
+            inputRecording.addFrame(keyboard.getMask());
+            cyclesPerFrame = inputRecording.getCyclesPerFrame();
+        }
+
+        long duration = end - start;
+        while (duration > 0 && !events.isEmpty() && events.peekTime() - end < 0) {
+            long cycle = (events.peekTime() - start) * cyclesPerFrame / duration;
+            if (cycle > executed)
+                executed += run((int) Math.min(cycle, cyclesPerFrame) - executed);
+
+            events.pollInto(keyboard);
+        }
+        if (events.isEmpty()) // the keys changed while it was full come after all
+            keyboard.applyOverflow();
+
+        executed += run(cyclesPerFrame - executed);
+        timersTick();
+
+        if (rewindBuffer != null)
+            rewindBuffer.record(cpu);
+
+        return executed;
+    }
+
+    /***
+     * Writes every following instruction to the file, see TraceWriter,
+     * until stopTrace(). With delta only the changed registers are written.
+     */
+    public void startTrace(File file, boolean delta) throws IOException {
+        stopTrace();
+
+        traceWriter = new TraceWriter(file, delta);
+        tracingEngine = new TracingEngine(traceWriter);
+    }
+
+    public void stopTrace() throws IOException {
+        if (traceWriter == null)
+            return;
+
+        TraceWriter writer = traceWriter;
+        traceWriter = null;
+        tracingEngine = null;
+        writer.close();
+    }
+
+    public boolean isTracing() {
+        return traceWriter != null;
+    }
+
+    /***
+     * A new independent machine in the same state, see copyFrom(),
+     * running with the default engine.
+     */
+    public CHIP8 copy() {
+        CHIP8 result = new CHIP8();
+        result.copyFrom(this);
+
+        return result;
+    }
+
+    /***
+     * Puts this machine in the state of the source with flat array copies,
+     * allocating nothing: copying back and forth between machines made once
+     * with copy() is the cheap way to branch. The program is shared,
+     * the engine, debugger, rewind buffer, recording and trace are kept.
+     */
+    public void copyFrom(CHIP8 source) {
+        cpu.copyFrom(source.cpu);
+        program = source.program;
+        image = source.image;
+    }
+
+    public boolean isWaitingForKey() {
+        return cpu.isWaitingForKey();
+    }
+
+    public boolean isHalted() {
+        return cpu.isHalted();
+    }
+
+    /***
+     * Runs frames while the CPU is halted, skipping the CPU:
+     * only the timers tick and the frames are recorded like by frame().
+     * Frames which can't be rewound to and leave the timers at zero
+     * change nothing and are skipped altogether.
+     */
+    public void idleFrames(long frames) {
+        if (!cpu.isHalted())
+            throw new IllegalStateException("The CPU isn't halted");
+
+        Memory memory = cpu.getMemory();
+        long kept = rewindBuffer == null ? 0 : rewindBuffer.getMaxFrames();
+
+        while (frames > 0) {
+            if (inputRecording == null && frames > kept && memory.delayTimer == 0 && memory.soundTimer == 0) {
+                frames = kept;
+                continue;
+            }
+
+            if (inputRecording != null)
+                inputRecording.addFrame(cpu.getKeyboard().getMask());
+
+            timersTick();
+
+            if (rewindBuffer != null)
+                rewindBuffer.record(cpu);
+
+            --frames;
+        }
+    }
+
+    /***
+     * Goes back the given number of frames, at most rewindBuffer.getAvailableFrames() - 1.
+     */
+    public void rewind(int frames) throws IOException {
+        if (rewindBuffer == null)
+            throw new IllegalStateException("Rewinding is off");
+
+        int available = rewindBuffer.getAvailableFrames();
+        if (available == 0)
+            return;
+
+        frames = Math.min(frames, available - 1);
+        rewindBuffer.rewind(frames, cpu);
+
+        if (inputRecording != null)
+            inputRecording.truncate(inputRecording.getFrames() - frames);
+    }
+
+    /***
+     * Reloads the last loaded program with the RNG seeded.
+     */
+    public void reset(long seed) {
+        if (program == null)
+            throw new IllegalStateException("No program loaded");
+
+        cpu.setRNG(new Rng(seed));
+        if (image != null)
+            load(image);
+        else
+            loadProgram(program);
+    }
+
+    /***
+     * Resets and records the keys pressed in every following frame.
+     * The recording can be replayed as long as the state isn't loaded
+     * or changed otherwise.
+     */
+    public void startRecording(long seed, int cyclesPerFrame) {
+        reset(seed);
+        inputRecording = new InputRecording(seed, cyclesPerFrame, InputRecording.checksum(program));
+
+        if (rewindBuffer != null)
+            rewindBuffer.clear();
+    }
+
+    public InputRecording stopRecording() {
+        InputRecording recording = inputRecording;
+        inputRecording = null;
+        return recording;
+    }
+
+    /***
+     * Resets and runs the recorded session as fast as possible,
+     * applying the recorded keys at the start of every frame.
+     */
+    public long replay(InputRecording recording) throws IllegalStateException {
+        if (program == null || InputRecording.checksum(program) != recording.getRomChecksum())
+            throw new IllegalArgumentException("The recording is of another ROM");
+
+        reset(recording.getSeed());
+
+        Keyboard keyboard = cpu.getKeyboard();
+        long executed = 0;
+        for (int frame = 0; frame < recording.getFrames(); ++frame) {
+            keyboard.setMask(recording.getMask(frame));
+            executed += frame(recording.getCyclesPerFrame());
+        }
+
+        return executed;
+    }
+
+    public long runFrames(long frames, int cyclesPerFrame) throws IllegalStateException {
+        long executed = 0;
+        for (long i = 0; i < frames; ++i)
+            executed += frame(cyclesPerFrame);
+
+        return executed;
+    }
+
+    public long runInstructions(long instructions, int cyclesPerFrame) throws IllegalStateException {
+        long executed = 0;
+        while (instructions - executed >= cyclesPerFrame)
+            executed += frame(cyclesPerFrame);
+
+        executed += run((int) (instructions - executed));
+
+        return executed;
+    }
+
+    /***
+     * See CPU.stateHash().
+     */
+    public long stateHash() {
+        return cpu.stateHash();
+    }
+
+    public long screenChecksum() {
+        Screen screen = cpu.getScreen();
+        CRC32 crc = new CRC32();
+
+        for (int y = 0; y < Screen.HEIGHT; ++y) {
+            long row = screen.getRow(y);
+            for (int shift = 56; shift >= 0; shift -= 8)
+                crc.update((int) (row >>> shift));
+        }
+
+        return crc.getValue();
+    }
+
+    public long memoryChecksum() {
+        Memory memory = cpu.getMemory();
+        CRC32 crc = new CRC32();
+
+        crc.update(memory.RAM);
+        crc.update(memory.V);
+        for (char value : new char[] {memory.I, memory.PC, memory.delayTimer, memory.soundTimer}) {
+            crc.update(value >>> 8);
+            crc.update(value);
+        }
+        for (char value : memory.stack) {
+            crc.update(value >>> 8);
+            crc.update(value);
+        }
+        crc.update(memory.SP);
+
+        return crc.getValue();
+    }
+
+    /***
+     * Loads a ROM file and clears the screen.
+     * Throws IOException if the file can't be read or doesn't fit in memory,
+     * the state is left unchanged then.
+     */
+    public void loadProgram(File file) throws IOException {
+        byte[] program = FileUtils.readFileToByteArray(file);
+        if (program.length > Memory.MAX_PROGRAM_SIZE)
+            throw new IOException("ROM too large: " + file + " (" + program.length + " bytes)");
+
+        loadProgram(program);
+    }
+
+    public void loadProgram(byte[] program) {
+        cpu.getScreen().clear();
+        cpu.getMemory().loadProgram(program);
+        this.program = program.clone();
+        image = null;
+    }
+
+    /***
+     * Loads the program of the image, copying only the RAM pages which
+     * differ from it: resetting a machine loaded this way is cheap.
+     * The RAM stays the machine's own, no page is shared with the image.
+     * The caller keeps its reference to the image.
+     */
+    public void load(RomImage image) {
+        cpu.getScreen().clear();
+        cpu.getMemory().load(image);
+        if (image != this.image) {
+            program = image.getProgram();
+            this.image = image;
         }
     }
 
     public void saveState(File file) throws IOException {
-        String json = cpu.toString();
-        FileUtils.writeStringToFile(file, json);
+        Snapshot.save(cpu, file);
     }
 
     public void loadState(File file) throws IOException {
-        String json = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
-        cpu = new CPU(json);
+        Snapshot.load(file, cpu);
+    }
+
+    /***
+     * Writes the state as JSON, for reading by other tools.
+     * It can't be loaded back, use saveState() for that.
+     */
+    public void exportJson(File file) throws IOException {
+        String json = cpu.toString();
+        FileUtils.writeStringToFile(file, json, StandardCharsets.UTF_8);
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: CHIP8 <rom> [--instructions N | --frames N | --replay FILE]"
+                + " [--cycles-per-frame N] [--engine interpreter|blocks] [--stats] [--trace FILE [--delta]]");
+    }
+
+    /***
+     * Headless runner: runs a ROM as fast as possible and prints
+     * the speed together with checksums of the final state.
+     */
+    public static void main(String[] args) {
+        File rom = null;
+        long instructions = -1;
+        long frames = -1;
+        File replay = null;
+        boolean stats = false;
+        File trace = null;
+        boolean delta = false;
+        int cyclesPerFrame = DEFAULT_CYCLES_PER_FRAME;
+        Engine engine = new Interpreter();
+
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                switch (args[i]) {
+                    case "--instructions":
+                        instructions = Long.parseLong(args[++i]);
+                        break;
+                    case "--frames":
+                        frames = Long.parseLong(args[++i]);
+                        break;
+                    case "--stats":
+                        stats = true;
+                        break;
+                    case "--replay":
+                        replay = new File(args[++i]);
+                        break;
+                    case "--trace":
+                        trace = new File(args[++i]);
+                        break;
+                    case "--delta":
+                        delta = true;
+                        break;
+                    case "--cycles-per-frame":
+                        cyclesPerFrame = Integer.parseInt(args[++i]);
+                        break;
+                    case "--engine":
+                        String name = args[++i];
+                        if (name.equals("blocks"))
+                            engine = new BlockEngine();
+                        else if (!name.equals("interpreter"))
+                            throw new IllegalArgumentException("unknown engine: " + name);
+                        break;
+                    default:
+                        if (rom != null || args[i].startsWith("--"))
+                            throw new IllegalArgumentException("unexpected argument: " + args[i]);
+                        rom = new File(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e.getMessage());
+            printUsage();
+            System.exit(1);
+        }
+
+        int modes = (instructions >= 0 ? 1 : 0) + (frames >= 0 ? 1 : 0) + (replay != null ? 1 : 0);
+        if (rom == null || modes != 1 || cyclesPerFrame <= 0 || (delta && trace == null)) {
+            printUsage();
+            System.exit(1);
+        }
+        if (!rom.isFile()) {
+            System.err.println("ROM not found: " + rom);
+            System.exit(1);
+        }
+
+        CHIP8 chip8 = new CHIP8();
+        chip8.setEngine(engine);
+        chip8.getStats().setEnabled(stats);
+        try {
+            chip8.loadProgram(rom);
+        } catch (IOException e) {
+            System.err.println("Can't load ROM: " + e.getMessage());
+            System.exit(1);
+        }
+
+        InputRecording recording = null;
+        if (replay != null) {
+            try {
+                recording = InputRecording.load(replay);
+            } catch (IOException e) {
+                System.err.println("Can't load recording: " + e.getMessage());
+                System.exit(1);
+            }
+            if (recording.getRomChecksum() != InputRecording.checksum(chip8.program)) {
+                System.err.println("The recording is of another ROM");
+                System.exit(1);
+            }
+        }
+
+        if (trace != null) {
+            try {
+                chip8.startTrace(trace, delta);
+            } catch (IOException e) {
+                System.err.println("Can't write trace: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        long start = System.nanoTime();
+        long executed;
+        try {
+            if (recording != null)
+                executed = chip8.replay(recording);
+            else if (frames >= 0)
+                executed = chip8.runFrames(frames, cyclesPerFrame);
+            else
+                executed = chip8.runInstructions(instructions, cyclesPerFrame);
+        } catch (RuntimeException e) { // invalid opcode, or out of RAM or of the stack
+            String fault = e instanceof IllegalStateException ? e.getMessage() : e.toString();
+            System.err.println(fault + " at PC 0x"
+                    + Integer.toHexString(chip8.getCpu().getMemory().PC).toUpperCase());
+            try {
+                chip8.stopTrace(); // keeps the instructions up to the error
+            } catch (IOException ignored) {
+            }
+            if (stats)
+                printStats(chip8.getStats());
+            System.exit(2);
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        try {
+            chip8.stopTrace();
+        } catch (IOException e) {
+            System.err.println("Can't write trace: " + e.getMessage());
+            System.exit(1);
+        }
+
+        System.out.println("instructions: " + executed);
+        System.out.println("time: " + (elapsed / 1_000_000) + " ms");
+        System.out.println("instructions per second: " + (long) (executed / (Math.max(elapsed, 1) / 1e9)));
+        System.out.println("skipped in idle loops: " + chip8.getCpu().getSkippedInstructions());
+        System.out.println("screen checksum: " + String.format("%08X", chip8.screenChecksum()));
+        System.out.println("memory checksum: " + String.format("%08X", chip8.memoryChecksum()));
+
+        if (stats)
+            printStats(chip8.getStats());
+    }
+
+    private static void printStats(ExecutionStats stats) {
+        System.out.println("timer ticks: " + stats.getTimerTicks());
+        System.out.println("sprite draws: " + stats.getSpriteDraws());
+        System.out.println("collisions: " + stats.getCollisions());
+
+        System.out.println("instructions per opcode family:");
+        stats.getFamilyCounts().forEach((family, count) -> {
+            if (count > 0)
+                System.out.println("  " + family + "\t" + count);
+        });
+
+        System.out.println("hottest addresses:");
+        stats.getHottestAddresses().forEach((address, count) ->
+                System.out.println("  " + address + "\t" + count));
     }
 }
@@ -4,23 +4,35 @@ import com.google.gson.Gson;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.util.Random;
-
 public class CPU {
 
-    @Getter @Setter
+    // for hashing the keys and the RNG state, see stateHash()
+    private static final long KEYS_KEY = 0x4B455953L;
+    private static final long RNG_KEY = 0x524E47L;
+
+    @Getter
     private Memory memory;
     @Getter @Setter
     private Keyboard keyboard;
     @Getter @Setter
     private Screen screen;
 
-    private boolean changeOnScreen = false;
+    @Getter @Setter
+    private Rng RNG = new Rng();
+
+    private transient InstructionCache instructionCache = new InstructionCache();
+
+    // set by FX0A finding no key pressed
+    private transient boolean waitingForKey = false;
 
-    private Random RNG = new Random();
+    // instructions per iteration of the idle loop just closed, see skipIdleLoop()
+    private transient int idleLoop = 0;
+
+    @Getter
+    private transient long skippedInstructions = 0;
 
     public boolean wasChangeOnScreen() {
-        return changeOnScreen;
+        return screen.isDirty();
     }
 
     public CPU() {
@@ -28,9 +40,46 @@ public class CPU {
     }
 
     public CPU(Memory memory, Keyboard keyboard, Screen screen) {
-        this.memory = memory;
         this.keyboard = keyboard;
         this.screen = screen;
+        setMemory(memory);
+    }
+
+    public void setMemory(Memory memory) {
+        if (this.memory != null)
+            this.memory.removeWriteListener(instructionCache);
+
+        this.memory = memory;
+        instructionCache.invalidateAll();
+        memory.addWriteListener(instructionCache);
+    }
+
+    /***
+     * Makes this CPU the same as the source - memory, screen, keys, RNG -
+     * with array copies into the objects it has, allocating nothing.
+     * Keys queued on the source keyboard aren't copied.
+     */
+    public void copyFrom(CPU source) {
+        int pages = memory.copyFrom(source.memory);
+        instructionCache.copyFrom(source.instructionCache, pages);
+        screen.copyFrom(source.screen);
+        keyboard.setMask(source.keyboard.getMask());
+        RNG.setState(source.RNG.getState());
+
+        waitingForKey = source.waitingForKey;
+        idleLoop = source.idleLoop;
+        skippedInstructions = source.skippedInstructions;
+    }
+
+    /***
+     * 64 bit hash of the whole state - memory, screen, keys, RNG - for
+     * finding states seen before: equal states have equal hashes. Only the
+     * RAM pages written since the previous call are hashed again, the rest
+     * is some 50 words.
+     */
+    public long stateHash() {
+        return memory.stateHash() ^ screen.stateHash()
+                ^ Rng.mix(keyboard.getMask() ^ KEYS_KEY) ^ Rng.mix(RNG.getState() ^ RNG_KEY);
     }
 
     public char fetchOpcode() {
@@ -41,6 +90,10 @@ public class CPU {
         return result;
     }
 
+    public Instruction fetchInstruction() {
+        return instructionCache.get(memory, memory.PC);
+    }
+
     public void timersTick() {
         if (memory.soundTimer > 0)
             memory.soundTimer -= 1;
@@ -48,331 +101,413 @@ public class CPU {
             memory.delayTimer -= 1;
     }
 
+    /***
+     * True while the CPU is stopped at FX0A waiting for a key:
+     * no cycle changes anything until a key is pressed.
+     */
+    public boolean isWaitingForKey() {
+        if (waitingForKey) {
+            int PC = memory.PC;
+            waitingForKey = PC + 1 < Memory.RAM_SIZE
+                    && (memory.RAM[PC] & 0xF0) == 0xF0 && memory.RAM[PC + 1] == 0x0A;
+        }
+
+        return waitingForKey;
+    }
+
+    /***
+     * True while the CPU can't go on by itself: it waits for a key,
+     * or is at a jump to itself.
+     */
+    public boolean isHalted() {
+        if (isWaitingForKey())
+            return true;
+
+        int PC = memory.PC;
+        return PC + 1 < Memory.RAM_SIZE
+                && (((memory.RAM[PC] & 0xFF) << 8) | (memory.RAM[PC + 1] & 0xFF)) == (0x1000 | PC);
+    }
+
+    /***
+     * For engines, after every instruction: if it closed an idle loop - one
+     * that changes nothing until the next timer tick or key event, which
+     * come between runs - returns how many of the remaining cycles of the
+     * run are whole iterations of it, which can be skipped.
+     */
+    int skipIdleLoop(int remainingCycles) {
+        int length = idleLoop;
+        if (length == 0)
+            return 0;
+
+        idleLoop = 0;
+        int skipped = remainingCycles - remainingCycles % length;
+        skippedInstructions += skipped;
+
+        return skipped;
+    }
+
+    /***
+     * Number of instructions of the loop from target to the jump back at
+     * address, if it only waits for the delay timer or jumps to itself.
+     */
+    private int idleLoopLength(int target, int address) {
+        if (target == address)
+            return 1;
+
+        // FX07 / 3Xkk or 4Xkk / 1NNN: waits until the delay timer is (or isn't) kk.
+        // Idle only if the next iteration, with the timer as it is now, doesn't exit
+        // and leaves VX as it is.
+        byte[] RAM = memory.RAM;
+        if (address - target == 4
+                && (RAM[target] & 0xF0) == 0xF0 && RAM[target + 1] == 0x07
+                && ((RAM[target + 2] & 0xF0) == 0x30 || (RAM[target + 2] & 0xF0) == 0x40)
+                && (RAM[target + 2] & 0x0F) == (RAM[target] & 0x0F)) {
+            int X = RAM[target] & 0x0F;
+            int timer = memory.delayTimer & 0xFF;
+            boolean skipIfEqual = (RAM[target + 2] & 0xF0) == 0x30;
+
+            if ((memory.V[X] & 0xFF) == timer && skipIfEqual != (timer == (RAM[target + 3] & 0xFF)))
+                return 3;
+        }
+
+        return 0;
+    }
+
     public void tick() throws IllegalStateException {
-        char opcode = fetchOpcode();
+        fetchInstruction().execute(this);
+    }
 
+    public static Instruction decode(char opcode) {
         switch (opcode & 0xF000) {
             case 0x0000:
-                if ((opcode & 0x00FF) == 0x00E0) {
-                    opcode00E0();
-                    break;
-                }
-                else if ((opcode & 0x00FF) == 0x00EE) {
-                    opcode00EE();
-                    break;
-                }
-                else {
-                    memory.PC += 2;
-                    break;
-                }
+                if ((opcode & 0x00FF) == 0x00E0)
+                    return new Instruction(opcode, "00E0", CPU::opcode00E0);
+                else if ((opcode & 0x00FF) == 0x00EE)
+                    return new Instruction(opcode, "00EE", CPU::opcode00EE);
+                else
+                    return new Instruction(opcode, "0NNN", CPU::opcode0NNN);
 
             case 0x1000:
-                opcode1NNN();
-                break;
+                return new Instruction(opcode, "1NNN", CPU::opcode1NNN);
 
             case 0x2000:
-                opcode2NNN();
-                break;
+                return new Instruction(opcode, "2NNN", CPU::opcode2NNN);
 
             case 0x3000:
-                opcode3XNN();
-                break;
+                return new Instruction(opcode, "3XNN", CPU::opcode3XNN);
 
             case 0x4000:
-                opcode4XNN();
-                break;
+                return new Instruction(opcode, "4XNN", CPU::opcode4XNN);
 
             case 0x5000:
-                opcode5XY0();
-                break;
+                return new Instruction(opcode, "5XY0", CPU::opcode5XY0);
 
             case 0x6000:
-                opcode6XNN();
-                break;
+                return new Instruction(opcode, "6XNN", CPU::opcode6XNN);
 
             case 0x7000:
-                opcode7XNN();
-                break;
+                return new Instruction(opcode, "7XNN", CPU::opcode7XNN);
 
             case 0x8000:
                 switch (opcode & 0xF00F) {
 
                     case 0x8000:
-                        opcode8XY0();
-                        break;
+                        return new Instruction(opcode, "8XY0", CPU::opcode8XY0);
 
                     case 0x8001:
-                        opcode8XY1();
-                        break;
+                        return new Instruction(opcode, "8XY1", CPU::opcode8XY1);
 
                     case 0x8002:
-                        opcode8XY2();
-                        break;
+                        return new Instruction(opcode, "8XY2", CPU::opcode8XY2);
 
                     case 0x8003:
-                        opcode8XY3();
-                        break;
+                        return new Instruction(opcode, "8XY3", CPU::opcode8XY3);
 
                     case 0x8004:
-                        opcode8XY4();
-                        break;
+                        return new Instruction(opcode, "8XY4", CPU::opcode8XY4);
 
                     case 0x8005:
-                        opcode8XY5();
-                        break;
+                        return new Instruction(opcode, "8XY5", CPU::opcode8XY5);
 
                     case 0x8006:
-                        opcode8XY6();
-                        break;
+                        return new Instruction(opcode, "8XY6", CPU::opcode8XY6);
 
                     case 0x8007:
-                        opcode8XY7();
-                        break;
+                        return new Instruction(opcode, "8XY7", CPU::opcode8XY7);
 
                     case 0x800E:
-                        opcode8XYE();
-                        break;
+                        return new Instruction(opcode, "8XYE", CPU::opcode8XYE);
 
                     default:
-                        throw new IllegalStateException("WRONG OPCODE: " + (int) opcode);
+                        return new Instruction(opcode, Instruction.INVALID, CPU::wrongOpcode);
                 }
-                break;
 
             case 0x9000:
-                opcode9XY0();
-                break;
+                return new Instruction(opcode, "9XY0", CPU::opcode9XY0);
 
             case 0xA000:
-                opcodeANNN();
-                break;
+                return new Instruction(opcode, "ANNN", CPU::opcodeANNN);
 
             case 0xB000:
-                opcodeBNNN();
-                break;
+                return new Instruction(opcode, "BNNN", CPU::opcodeBNNN);
 
             case 0xC000:
-                opcodeCXNN();
-                break;
+                return new Instruction(opcode, "CXNN", CPU::opcodeCXNN);
 
             case 0xD000:
-                opcodeDXYN();
-                break;
+                return new Instruction(opcode, "DXYN", CPU::opcodeDXYN);
 
             case 0xE000:
-                if ((opcode & 0xF0FF) == 0xE09E) {
-                    opcodeEX9E();
-                    break;
-                }
-                else if ((opcode & 0xF0FF) == 0xE0A1) {
-                    opcodeEXA1();
-                    break;
-                }
-                else {
-                    throw new IllegalStateException("WRONG OPCODE: " + (int) opcode);
-                }
+                if ((opcode & 0xF0FF) == 0xE09E)
+                    return new Instruction(opcode, "EX9E", CPU::opcodeEX9E);
+                else if ((opcode & 0xF0FF) == 0xE0A1)
+                    return new Instruction(opcode, "EXA1", CPU::opcodeEXA1);
+                else
+                    return new Instruction(opcode, Instruction.INVALID, CPU::wrongOpcode);
 
             case 0xF000:
                 switch (opcode & 0xF0FF) {
                     case 0xF007:
-                        opcodeFX07();
-                        break;
+                        return new Instruction(opcode, "FX07", CPU::opcodeFX07);
 
                     case 0xF00A:
-                        opcodeFX0A();
-                        break;
+                        return new Instruction(opcode, "FX0A", CPU::opcodeFX0A);
 
                     case 0xF015:
-                        opcodeFX15();
-                        break;
+                        return new Instruction(opcode, "FX15", CPU::opcodeFX15);
 
                     case 0xF018:
-                        opcodeFX18();
-                        break;
+                        return new Instruction(opcode, "FX18", CPU::opcodeFX18);
 
                     case 0xF01E:
-                        opcodeFX1E();
-                        break;
+                        return new Instruction(opcode, "FX1E", CPU::opcodeFX1E);
 
                     case 0xF029:
-                        opcodeFX29();
-                        break;
+                        return new Instruction(opcode, "FX29", CPU::opcodeFX29);
 
                     case 0xF033:
-                        opcodeFX33();
-                        break;
+                        return new Instruction(opcode, "FX33", CPU::opcodeFX33);
 
                     case 0xF055:
-                        opcodeFX55();
-                        break;
+                        return new Instruction(opcode, "FX55", CPU::opcodeFX55);
 
                     case 0xF065:
-                        opcodeFX65();
-                        break;
+                        return new Instruction(opcode, "FX65", CPU::opcodeFX65);
 
                     default:
-                        throw new IllegalStateException("WRONG OPCODE: " + (int) opcode);
+                        return new Instruction(opcode, Instruction.INVALID, CPU::wrongOpcode);
                 }
-                break;
 
             default:
-                throw new IllegalStateException("WRONG OPCODE: " + (int) opcode);
+                return new Instruction(opcode, Instruction.INVALID, CPU::wrongOpcode);
         }
+    }
 
+    private void wrongOpcode(Instruction instruction) {
+        throw new IllegalStateException("WRONG OPCODE: " + (int) instruction.opcode);
     }
 
     /***
-     * Clears the screen.
+     * Calls machine code routine at address NNN.
+     * (Not supported, the instruction is skipped)
      */
+    public void opcode0NNN(Instruction instruction) {
+        memory.PC += 2;
+    }
+
     public void opcode00E0() {
+        opcode00E0(fetchInstruction());
+    }
+
+    /***
+     * Clears the screen.
+     */
+    public void opcode00E0(Instruction instruction) {
         screen.clear();
-        changeOnScreen = true;
 
         memory.PC += 2;
     }
 
+    public void opcode00EE() {
+        opcode00EE(fetchInstruction());
+    }
+
     /***
      *  Returns from a subroutine.
      */
-    public void opcode00EE() {
+    public void opcode00EE(Instruction instruction) {
         memory.PC = memory.stack[memory.SP];
         --memory.SP;
     }
+
+    public void opcode1NNN() {
+        opcode1NNN(fetchInstruction());
+    }
+
     /***
      *  Jumps to address NNN.
      */
-    public void opcode1NNN() {
-        char newAddress = (char) (fetchOpcode() & 0x0FFF);
-        memory.PC = newAddress;
+    public void opcode1NNN(Instruction instruction) {
+        int address = memory.PC;
+        memory.PC = (char) instruction.NNN;
+
+        if (instruction.NNN <= address)
+            idleLoop = idleLoopLength(instruction.NNN, address);
+    }
+
+    public void opcode2NNN() {
+        opcode2NNN(fetchInstruction());
     }
 
     /***
      *  Calls subroutine at NNN.
      */
-    public void opcode2NNN() {
+    public void opcode2NNN(Instruction instruction) {
         ++memory.SP;
         memory.stack[memory.SP] = (char) (memory.PC + 2);
 
-        char newAddress = (char)(fetchOpcode() & 0x0FFF);
-        memory.PC = newAddress;
+        memory.PC = (char) instruction.NNN;
+    }
+
+    public void opcode3XNN() {
+        opcode3XNN(fetchInstruction());
     }
 
     /***
      *  Skips the next instruction if VX equals NN.
      *  (Usually the next instruction is a jump to skip a code block)
      */
-    public void opcode3XNN() {
-        int NN = (byte)(fetchOpcode() & 0xFF);
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-
-        if (memory.V[X] == NN)
+    public void opcode3XNN(Instruction instruction) {
+        if (memory.V[instruction.X] == (byte) instruction.NN)
             memory.PC += 4;
         else
             memory.PC += 2;
     }
 
+    public void opcode4XNN() {
+        opcode4XNN(fetchInstruction());
+    }
+
     /***
      *  Skips the next instruction if VX doesn't equal NN.
      *  (Usually the next instruction is a jump to skip a code block)
      */
-    public void opcode4XNN() {
-        int NN = (byte) (fetchOpcode() & 0xFF);
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-
-        if (memory.V[X] != NN)
+    public void opcode4XNN(Instruction instruction) {
+        if (memory.V[instruction.X] != (byte) instruction.NN)
             memory.PC += 4;
         else
             memory.PC += 2;
     }
 
+    public void opcode5XY0() {
+        opcode5XY0(fetchInstruction());
+    }
+
     /***
      *  Skips the next instruction if VX equals VY.
      *  (Usually the next instruction is a jump to skip a code block)
      */
-    public void opcode5XY0() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-        int Y = (fetchOpcode() & 0x00F0) >>> 4;
-
-        if (memory.V[X] == memory.V[Y])
+    public void opcode5XY0(Instruction instruction) {
+        if (memory.V[instruction.X] == memory.V[instruction.Y])
             memory.PC += 4;
         else
             memory.PC += 2;
     }
 
+    public void opcode6XNN() {
+        opcode6XNN(fetchInstruction());
+    }
+
     /***
      *  Sets VX to NN.
      */
-    public void opcode6XNN() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-        int NN = (fetchOpcode() & 0x00FF);
-
-        memory.V[X] = (byte) NN;
+    public void opcode6XNN(Instruction instruction) {
+        memory.V[instruction.X] = (byte) instruction.NN;
         memory.PC += 2;
     }
 
+    public void opcode7XNN() {
+        opcode7XNN(fetchInstruction());
+    }
+
     /***
      *  Adds NN to VX. (Carry flag is not changed)
      */
-    public void opcode7XNN() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-        int NN = (fetchOpcode() & 0x00FF);
-
-        memory.V[X] += NN;
+    public void opcode7XNN(Instruction instruction) {
+        memory.V[instruction.X] += instruction.NN;
         memory.PC += 2;
     }
 
+    public void opcode8XY0() {
+        opcode8XY0(fetchInstruction());
+    }
+
     /***
      *   Sets VX to the value of VY.
      */
-    public void opcode8XY0() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-        int Y = (fetchOpcode() & 0x00F0) >>> 4;
-
-        memory.V[X] = memory.V[Y];
+    public void opcode8XY0(Instruction instruction) {
+        memory.V[instruction.X] = memory.V[instruction.Y];
         memory.PC += 2;
     }
 
+    public void opcode8XY1() {
+        opcode8XY1(fetchInstruction());
+    }
+
     /***
      *   Sets VX to VX or VY.
      *   (Bitwise OR operation)
      */
-    public void opcode8XY1() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-        int Y = (fetchOpcode() & 0x00F0) >>> 4;
+    public void opcode8XY1(Instruction instruction) {
+        int X = instruction.X;
+        int Y = instruction.Y;
 
         memory.V[X] = (byte)((memory.V[X] & 0xFF) | (memory.V[Y] & 0xFF));
         memory.PC += 2;
     }
 
+    public void opcode8XY2() {
+        opcode8XY2(fetchInstruction());
+    }
+
     /***
      *   Sets VX to VX and VY.
      *   (Bitwise AND operation)
      */
-    public void opcode8XY2() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-        int Y = (fetchOpcode() & 0x00F0) >>> 4;
+    public void opcode8XY2(Instruction instruction) {
+        int X = instruction.X;
+        int Y = instruction.Y;
 
         memory.V[X] = (byte)((memory.V[X] & 0xFF) & (memory.V[Y] & 0xFF));
         memory.PC += 2;
     }
 
+    public void opcode8XY3() {
+        opcode8XY3(fetchInstruction());
+    }
+
     /***
      *   Sets VX to VX xor VY.
      */
-    public void opcode8XY3() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-        int Y = (fetchOpcode() & 0x00F0) >>> 4;
+    public void opcode8XY3(Instruction instruction) {
+        int X = instruction.X;
+        int Y = instruction.Y;
 
         memory.V[X] = (byte)((memory.V[X] & 0xFF) ^ (memory.V[Y] & 0xFF));
         memory.PC += 2;
     }
 
+    public void opcode8XY4() {
+        opcode8XY4(fetchInstruction());
+    }
+
     /***
      *   Adds VY to VX.
      *   VF is set to 1 when there's a carry, and to 0 when there isn't.
      */
-    public void opcode8XY4() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-        int Y = (fetchOpcode() & 0x00F0) >>> 4;
+    public void opcode8XY4(Instruction instruction) {
+        int X = instruction.X;
+        int Y = instruction.Y;
         int result = (int) (memory.V[X] & 0xFF) + (memory.V[Y] & 0xFF);
 
         if (result >= 0xFF) //  overflow
@@ -384,13 +519,17 @@ public class CPU {
         memory.PC += 2;
     }
 
+    public void opcode8XY5() {
+        opcode8XY5(fetchInstruction());
+    }
+
     /***
      *   VY is subtracted from VX.
      *   VF is set to 0 when there's a borrow, and 1 when there isn't.
      */
-    public void opcode8XY5() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-        int Y = (fetchOpcode() & 0x00F0) >>> 4;
+    public void opcode8XY5(Instruction instruction) {
+        int X = instruction.X;
+        int Y = instruction.Y;
 
         if ((memory.V[X] & 0xFF) > (memory.V[Y] & 0xFF)) // not borrow
             memory.V[0xF] = 0x1;
@@ -401,12 +540,16 @@ public class CPU {
         memory.PC += 2;
     }
 
+    public void opcode8XY6() {
+        opcode8XY6(fetchInstruction());
+    }
+
     /***
      *   Stores the least significant bit
      *   of VX in VF and then shifts VX to the right by 1.
      */
-    public void opcode8XY6() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
+    public void opcode8XY6(Instruction instruction) {
+        int X = instruction.X;
 
         memory.V[0xF] = (byte)(memory.V[X] & 0x01);
 
@@ -414,13 +557,17 @@ public class CPU {
         memory.PC += 2;
     }
 
+    public void opcode8XY7() {
+        opcode8XY7(fetchInstruction());
+    }
+
     /***
      *   Sets VX to VY minus VX. VF is set to 0
      *   when there's a borrow, and 1 when there isn't..
      */
-    public void opcode8XY7() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-        int Y = (fetchOpcode() & 0x00F0) >>> 4;
+    public void opcode8XY7(Instruction instruction) {
+        int X = instruction.X;
+        int Y = instruction.Y;
 
         if ((memory.V[Y] & 0xFF) > (memory.V[X] & 0xFF)) // not borrow
             memory.V[0xF] = 0x1;
@@ -432,12 +579,16 @@ public class CPU {
 
     }
 
+    public void opcode8XYE() {
+        opcode8XYE(fetchInstruction());
+    }
+
     /***
      *   Stores the most significant bit of VX
      *   in VF and then shifts VX to the left by 1
      */
-    public void opcode8XYE() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
+    public void opcode8XYE(Instruction instruction) {
+        int X = instruction.X;
 
         memory.V[0xF] = (byte)((memory.V[X] & 0b10000000) >>> 7);
 
@@ -445,16 +596,17 @@ public class CPU {
         memory.PC += 2;
     }
 
+    public void opcode9XY0() {
+        opcode9XY0(fetchInstruction());
+    }
+
     /***
      *   Skips the next instruction if VX doesn't equal VY.
      *   (Usually the next instruction is a jump to skip a code block)
      */
-    public void opcode9XY0() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-        int Y = (fetchOpcode() & 0x00F0) >>> 4;
-
-        int VX = memory.V[X];
-        int VY = memory.V[Y];
+    public void opcode9XY0(Instruction instruction) {
+        int VX = memory.V[instruction.X];
+        int VY = memory.V[instruction.Y];
 
         if (VX != VY)
             memory.PC += 4;
@@ -462,40 +614,50 @@ public class CPU {
             memory.PC += 2;
     }
 
+    public void opcodeANNN() {
+        opcodeANNN(fetchInstruction());
+    }
+
     /***
      *   Sets I to the address NNN.
      */
-    public void opcodeANNN() {
-        int NNN = (fetchOpcode() & 0x0FFF);
-
-        memory.I = (char) NNN;
+    public void opcodeANNN(Instruction instruction) {
+        memory.I = (char) instruction.NNN;
         memory.PC += 2;
     }
 
+    public void opcodeBNNN() {
+        opcodeBNNN(fetchInstruction());
+    }
+
     /***
      *   Jumps to the address NNN plus V0.
      */
-    public void opcodeBNNN() {
-        int NNN = (fetchOpcode() & 0x0FFF);
+    public void opcodeBNNN(Instruction instruction) {
+        memory.PC = (char) (instruction.NNN + (memory.V[0] & 0xFF) );
+    }
 
-        memory.PC = (char) (NNN + (memory.V[0] & 0xFF) );
+    public void opcodeCXNN() {
+        opcodeCXNN(fetchInstruction());
     }
 
     /**
      * Sets VX to the result of a bitwise and operation
      * on a random number (Typically: 0 to 255) and NN.
      */
-    public void opcodeCXNN() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-        int NN = (fetchOpcode() & 0x00FF);
-        int randomByte = RNG.nextInt() & 0xFF;
+    public void opcodeCXNN(Instruction instruction) {
+        int randomByte = RNG.nextByte();
 
-        byte result = (byte) (NN & randomByte);
+        byte result = (byte) (instruction.NN & randomByte);
 
-        memory.V[X] = result;
+        memory.V[instruction.X] = result;
         memory.PC += 2;
     }
 
+    public void opcodeDXYN() {
+        opcodeDXYN(fetchInstruction());
+    }
+
     /**
      * Draws a sprite at coordinate (VX, VY) that has a width
      * of 8 pixels and a height of N pixels. Each row of 8 pixels
@@ -504,47 +666,36 @@ public class CPU {
      * above, VF is set to 1 if any screen pixels are flipped from set to unset
      * when the sprite is drawn, and to 0 if that doesn’t happen
      */
-    public void opcodeDXYN() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-        int Y = (fetchOpcode() & 0x00F0) >>> 4;
-        int N = (fetchOpcode() & 0x000F);
+    public void opcodeDXYN(Instruction instruction) {
+        int N = instruction.N;
         int I = memory.I;
 
-        int VX = memory.V[X] & 0xFF;
-        int VY = memory.V[Y] & 0xFF;
-
-        memory.V[0xF] = 0x0;
+        int VX = memory.V[instruction.X] & 0xFF;
+        int VY = memory.V[instruction.Y] & 0xFF;
 
+        boolean collision = false;
         for (int y = 0; y < N; ++y) {
-            byte byteOfPixels = memory.RAM[I + y];
-
-            for (int x = 0; x < 8; ++x) {
-                boolean pixel;
-                if ((byteOfPixels & (0x80 >>> x)) != 0)
-                    pixel = true;
-                else
-                    pixel = false;
-
-                if (pixel == true) {
-                    int cordX = (x + VX) % Screen.WIDTH;
-                    int cordY = (y + VY) % Screen.HEIGHT;
+            // sprite byte moved to pixel VX of a 64 bit row, wrapping around the edge
+            long bits = Long.rotateRight((memory.RAM[I + y] & 0xFFL) << 56, VX);
 
-                    if (screen.flipPixel(cordX, cordY) == false)
-                        memory.V[0xF] = 0x1;
-                }
-            }
+            if (screen.xorRow((y + VY) % Screen.HEIGHT, bits))
+                collision = true;
         }
+
+        memory.V[0xF] = (byte) (collision ? 0x1 : 0x0);
         memory.PC += 2;
-        changeOnScreen = true;
+    }
+
+    public void opcodeEX9E() {
+        opcodeEX9E(fetchInstruction());
     }
 
     /**
      * Skips the next instruction if the key stored in VX is pressed.
      * (Usually the next instruction is a jump to skip a code block)
      */
-    public void opcodeEX9E() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-        byte VX = memory.V[X];
+    public void opcodeEX9E(Instruction instruction) {
+        byte VX = memory.V[instruction.X];
 
         if (keyboard.isPressed(VX))
             memory.PC += 4;
@@ -552,13 +703,16 @@ public class CPU {
             memory.PC += 2;
     }
 
+    public void opcodeEXA1() {
+        opcodeEXA1(fetchInstruction());
+    }
+
     /**
      * Skips the next instruction if the key stored in VX isn't pressed.
      * (Usually the next instruction is a jump to skip a code block)
      */
-    public void opcodeEXA1() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-        byte VX = memory.V[X];
+    public void opcodeEXA1(Instruction instruction) {
+        byte VX = memory.V[instruction.X];
 
         if (keyboard.isPressed(VX))
             memory.PC += 2;
@@ -566,22 +720,26 @@ public class CPU {
             memory.PC += 4;
     }
 
+    public void opcodeFX07() {
+        opcodeFX07(fetchInstruction());
+    }
+
     /**
      * Sets VX to the value of the delay timer.
      */
-    public void opcodeFX07() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-
-        memory.V[X] = (byte) (memory.delayTimer & 0xFF);
+    public void opcodeFX07(Instruction instruction) {
+        memory.V[instruction.X] = (byte) (memory.delayTimer & 0xFF);
         memory.PC += 2;
     }
 
+    public void opcodeFX0A() {
+        opcodeFX0A(fetchInstruction());
+    }
+
     /**
      * A key press is awaited, and then stored in VX.
      */
-    public void opcodeFX0A() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-
+    public void opcodeFX0A(Instruction instruction) {
         byte theNumberOfKey = -1;
         for (byte i = 0; i < Keyboard.NUMBER_OF_KEYS; ++i) {
             if (keyboard.isPressed(i)) {
@@ -591,54 +749,72 @@ public class CPU {
         }
 
         if (theNumberOfKey != -1) {
-            memory.V[X] = theNumberOfKey;
+            memory.V[instruction.X] = theNumberOfKey;
             memory.PC += 2;
         }
+
+        waitingForKey = theNumberOfKey == -1;
+        if (waitingForKey)
+            idleLoop = 1;
+    }
+
+    public void opcodeFX15() {
+        opcodeFX15(fetchInstruction());
     }
 
     /**
      * Sets the delay timer to VX.
      */
-    public void opcodeFX15() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-
-        memory.delayTimer = (char)(memory.V[X] & 0xFF);
+    public void opcodeFX15(Instruction instruction) {
+        memory.delayTimer = (char)(memory.V[instruction.X] & 0xFF);
         memory.PC += 2;
     }
 
+    public void opcodeFX18() {
+        opcodeFX18(fetchInstruction());
+    }
+
     /**
      * Sets the sound timer to VX.
      */
-    public void opcodeFX18() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-
-        memory.soundTimer = (char)(memory.V[X] & 0xFF);
+    public void opcodeFX18(Instruction instruction) {
+        memory.soundTimer = (char)(memory.V[instruction.X] & 0xFF);
         memory.PC += 2;
     }
 
+    public void opcodeFX1E() {
+        opcodeFX1E(fetchInstruction());
+    }
+
     /**
      * Adds VX to I.
      */
-    public void opcodeFX1E() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-        int VX = (memory.V[X] & 0xFF);
+    public void opcodeFX1E(Instruction instruction) {
+        int VX = (memory.V[instruction.X] & 0xFF);
 
         memory.I += VX;
         memory.PC += 2;
     }
 
+    public void opcodeFX29() {
+        opcodeFX29(fetchInstruction());
+    }
+
     /**
      * Sets I to the location of the sprite for the character in VX.
      * Characters 0-F (in hexadecimal) are represented by a 4x5 font.
      */
-    public void opcodeFX29() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-        int VX = (memory.V[X] & 0xFF);
+    public void opcodeFX29(Instruction instruction) {
+        int VX = (memory.V[instruction.X] & 0xFF);
 
         memory.I = (char) (5 * VX);
         memory.PC += 2;
     }
 
+    public void opcodeFX33() {
+        opcodeFX33(fetchInstruction());
+    }
+
     /**
      * Stores the binary-coded decimal representation of VX, with the most
      * significant of three digits at the address in I, the middle digit
@@ -647,38 +823,48 @@ public class CPU {
      * hundreds digit in memory at location in I, the tens digit at
      * location I+1, and the ones digit at location I+2.)
      */
-    public void opcodeFX33() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
-        int VX = (memory.V[X] & 0xFF);
+    public void opcodeFX33(Instruction instruction) {
+        int VX = (memory.V[instruction.X] & 0xFF);
         int I = memory.I;
 
         memory.RAM[I] = (byte) (VX / 100);
         memory.RAM[I + 1] = (byte) ((VX / 10) % 10);
         memory.RAM[I + 2] = (byte) (VX % 10);
+        memory.notifyWrite(I, 3);
 
         memory.PC += 2;
     }
 
+    public void opcodeFX55() {
+        opcodeFX55(fetchInstruction());
+    }
+
     /**
      * Stores V0 to VX (including VX) in memory starting at address I.
      * The offset from I is increased by 1 for each value written,
      * but I itself is left unmodified.
      */
-    public void opcodeFX55() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
+    public void opcodeFX55(Instruction instruction) {
+        int X = instruction.X;
         int I = memory.I;
 
         System.arraycopy(memory.V, 0, memory.RAM, I, X + 1);
+        memory.notifyWrite(I, X + 1);
+
         memory.PC += 2;
     }
 
+    public void opcodeFX65() {
+        opcodeFX65(fetchInstruction());
+    }
+
     /**
      * Fills V0 to VX (including VX) with values from memory starting at
      * address I. The offset from I is increased by 1 for each value written,
      * but I itself is left unmodified.
      */
-    public void opcodeFX65() {
-        int X = (fetchOpcode() & 0x0F00) >>> 8;
+    public void opcodeFX65(Instruction instruction) {
+        int X = instruction.X;
         int I = memory.I;
 
         System.arraycopy(memory.RAM, I, memory.V,0, X + 1);
@@ -694,10 +880,9 @@ public class CPU {
         Gson gson = new Gson();
         CPU cpuFromJson = gson.fromJson(json, CPU.class);
 
-        memory = cpuFromJson.memory;
+        setMemory(cpuFromJson.memory);
         keyboard = cpuFromJson.keyboard;
         screen = cpuFromJson.screen;
-        changeOnScreen = cpuFromJson.changeOnScreen;
         RNG = cpuFromJson.RNG;
     }
 
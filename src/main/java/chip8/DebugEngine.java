@@ -0,0 +1,33 @@
+package chip8;
+
+/*
+    Interpreter checking the breakpoints and watchpoints of a Debugger
+    before every instruction. CHIP8 runs the CPU with it instead of its
+    engine while any is set. Idle loops aren't skipped, so a breakpoint
+    in one is hit.
+ */
+public class DebugEngine implements Engine {
+
+    private final Debugger debugger;
+
+    public DebugEngine(Debugger debugger) {
+        this.debugger = debugger;
+    }
+
+    /***
+     * Stops early, before the instruction hitting a breakpoint or a watchpoint,
+     * and runs nothing until the debugger is resumed.
+     */
+    @Override
+    public int run(CPU cpu, int cycles) throws IllegalStateException {
+        for (int i = 0; i < cycles; ++i) {
+            if (debugger.isStopped() || debugger.check(cpu))
+                return i;
+
+            cpu.tick();
+            cpu.skipIdleLoop(0);
+        }
+
+        return cycles;
+    }
+}
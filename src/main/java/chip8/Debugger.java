@@ -0,0 +1,229 @@
+package chip8;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/*
+    Breakpoints on the PC, optionally only when a condition on the
+    registers holds, and watchpoints on reads (DXYN, FX65) and writes
+    (FX33, FX55) of RAM ranges. Execution stops before the instruction
+    which hits one, the hit is kept until resume() and passed to the
+    hit listeners.
+
+    While any is set CHIP8 runs the CPU with a DebugEngine checking them
+    before every instruction, without any it's not involved at all; the
+    tables of breakpoints and watchpoints are only made on the first one.
+    Has to be used from the thread running the CHIP8.
+ */
+public class Debugger {
+
+    public static final int READ = 1;
+    public static final int WRITE = 2;
+
+    public enum Type {
+        BREAKPOINT, READ, WRITE
+    }
+
+    public interface HitListener {
+        void onHit(Hit hit); // called from the thread running the CHIP8
+    }
+
+    @Getter
+    public static class Hit {
+
+        private final Type type;
+        private final int PC;
+        private final int address; // accessed by a watched read or write, else PC
+
+        Hit(Type type, int PC, int address) {
+            this.type = type;
+            this.PC = PC;
+            this.address = address;
+        }
+
+        @Override
+        public String toString() {
+            if (type == Type.BREAKPOINT)
+                return String.format("Breakpoint at PC 0x%03X", PC);
+
+            return String.format("%s of 0x%03X at PC 0x%03X", type == Type.READ ? "Read" : "Write", address, PC);
+        }
+    }
+
+    private static final Predicate<Memory> ALWAYS = memory -> true;
+
+    // condition per address, READ | WRITE per address - null until the first is set
+    private Predicate<Memory>[] breakpoints;
+    private byte[] watched;
+
+    private int numberOfBreakpoints = 0;
+    private int numberOfWatched = 0;
+
+    @Getter
+    private Hit hit;
+
+    private boolean resumed = false; // the next instruction runs without checks
+
+    private final List<HitListener> hitListeners = new ArrayList<>();
+
+    public void addHitListener(HitListener listener) {
+        hitListeners.add(listener);
+    }
+
+    public void removeHitListener(HitListener listener) {
+        hitListeners.remove(listener);
+    }
+
+    /***
+     * True while any breakpoint or watchpoint is set.
+     */
+    public boolean isActive() {
+        return numberOfBreakpoints + numberOfWatched != 0;
+    }
+
+    public boolean isStopped() {
+        return hit != null;
+    }
+
+    /***
+     * Goes on after a hit, starting with the instruction it stopped at.
+     */
+    public void resume() {
+        if (hit != null) {
+            hit = null;
+            resumed = true;
+        }
+    }
+
+    public void addBreakpoint(int address) {
+        addBreakpoint(address, ALWAYS);
+    }
+
+    /***
+     * Stops at the address only when the condition holds, e.g. whenV(3, 0x10).
+     */
+    @SuppressWarnings("unchecked")
+    public void addBreakpoint(int address, Predicate<Memory> condition) {
+        if (breakpoints == null)
+            breakpoints = (Predicate<Memory>[]) new Predicate<?>[Memory.RAM_SIZE];
+
+        if (breakpoints[address] == null)
+            ++numberOfBreakpoints;
+
+        breakpoints[address] = condition;
+    }
+
+    public void removeBreakpoint(int address) {
+        if (hasBreakpoint(address)) {
+            --numberOfBreakpoints;
+            breakpoints[address] = null;
+        }
+    }
+
+    public boolean hasBreakpoint(int address) {
+        return breakpoints != null && breakpoints[address] != null;
+    }
+
+    public static Predicate<Memory> whenV(int X, int value) {
+        return memory -> (memory.V[X] & 0xFF) == value;
+    }
+
+    public static Predicate<Memory> whenI(int value) {
+        return memory -> memory.I == value;
+    }
+
+    /***
+     * Watches RAM[from .. to] for the given accesses, READ and/or WRITE.
+     */
+    public void watch(int from, int to, int access) {
+        setWatched(from, to, access);
+    }
+
+    public void unwatch(int from, int to) {
+        setWatched(from, to, 0);
+    }
+
+    private void setWatched(int from, int to, int access) {
+        if (from < 0 || to >= Memory.RAM_SIZE || from > to || (access & ~(READ | WRITE)) != 0)
+            throw new IllegalArgumentException(String.format("from 0x%X to 0x%X, access %d", from, to, access));
+
+        if (watched == null) {
+            if (access == 0)
+                return;
+            watched = new byte[Memory.RAM_SIZE];
+        }
+
+        for (int address = from; address <= to; ++address) {
+            if (watched[address] == 0 && access != 0)
+                ++numberOfWatched;
+            else if (watched[address] != 0 && access == 0)
+                --numberOfWatched;
+
+            watched[address] = (byte) access;
+        }
+    }
+
+    public void clear() {
+        breakpoints = null;
+        watched = null;
+        numberOfBreakpoints = 0;
+        numberOfWatched = 0;
+        hit = null;
+        resumed = false;
+    }
+
+    /***
+     * Called by the DebugEngine before every instruction: true, keeping
+     * the hit, if the instruction at PC must not run.
+     */
+    boolean check(CPU cpu) {
+        if (resumed) {
+            resumed = false;
+            return false;
+        }
+
+        Memory memory = cpu.getMemory();
+        int PC = memory.PC;
+
+        Predicate<Memory> condition = breakpoints != null ? breakpoints[PC] : null;
+        if (condition != null && condition.test(memory))
+            return stop(new Hit(Type.BREAKPOINT, PC, PC));
+
+        if (numberOfWatched != 0) {
+            Instruction instruction = cpu.fetchInstruction();
+            switch (instruction.opcode & 0xF0FF) {
+                case 0xF033:
+                    return checkWatched(Type.WRITE, WRITE, PC, memory.I, 3);
+                case 0xF055:
+                    return checkWatched(Type.WRITE, WRITE, PC, memory.I, instruction.X + 1);
+                case 0xF065:
+                    return checkWatched(Type.READ, READ, PC, memory.I, instruction.X + 1);
+                default:
+                    if ((instruction.opcode & 0xF000) == 0xD000)
+                        return checkWatched(Type.READ, READ, PC, memory.I, instruction.N);
+            }
+        }
+
+        return false;
+    }
+
+    private boolean checkWatched(Type type, int access, int PC, int from, int length) {
+        for (int address = from; address < from + length && address < Memory.RAM_SIZE; ++address) {
+            if ((watched[address] & access) != 0)
+                return stop(new Hit(type, PC, address));
+        }
+
+        return false;
+    }
+
+    private boolean stop(Hit hit) {
+        this.hit = hit;
+        for (int i = 0; i < hitListeners.size(); ++i)
+            hitListeners.get(i).onHit(hit);
+
+        return true;
+    }
+}
@@ -0,0 +1,202 @@
+package chip8;
+
+import lombok.Getter;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+    Runs the emulation on its own thread at exactly 60 frames per second.
+    Every frame executes instructionsPerFrame CPU cycles, ticks the timers
+    and publishes the screen to a FrameBuffer if it changed. A frame emulates
+    the host time since the previous one: keys queued on the Keyboard in that
+    time are applied at the matching cycles.
+
+    While the CPU waits for a key (FX0A) or jumps to itself the thread parks
+    until a key event instead of running frames, and catches up with the
+    timers afterwards.
+
+    A hit of a breakpoint or watchpoint of the Debugger pauses the loop,
+    running again resumes from it.
+
+    The thread owns the CHIP8 while it runs. Other threads hand it work
+    through execute(), which runs between frames.
+ */
+public class EmulationLoop implements Runnable, Executor {
+
+    public static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / CHIP8.TIMERS_RATE;
+
+    // behind schedule by more than this (e.g. after a GC pause) the lost time is skipped
+    private static final long MAX_LAG_NANOS = 5 * FRAME_NANOS;
+
+    private final CHIP8 chip8;
+
+    @Getter
+    private final FrameBuffer frameBuffer = new FrameBuffer();
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    @Getter
+    private volatile int instructionsPerFrame = CHIP8.DEFAULT_CYCLES_PER_FRAME;
+
+    @Getter
+    private volatile boolean running = false;
+    private volatile boolean stopped = false;
+
+    private Thread thread;
+
+    public EmulationLoop(CHIP8 chip8) {
+        this.chip8 = chip8;
+    }
+
+    public void start() {
+        thread = new Thread(this, "CHIP-8 emulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        stopped = true;
+        wakeUp();
+    }
+
+    public void setRunning(boolean running) {
+        this.running = running;
+        wakeUp();
+    }
+
+    public void setInstructionsPerFrame(int instructionsPerFrame) {
+        if (instructionsPerFrame <= 0)
+            throw new IllegalArgumentException("instructionsPerFrame: " + instructionsPerFrame);
+
+        this.instructionsPerFrame = instructionsPerFrame;
+    }
+
+    /***
+     * Runs the task on the emulation thread, between two frames.
+     */
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        wakeUp();
+    }
+
+    private void wakeUp() {
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        long frames = 0;
+        long previousFrame = start; // the host time emulated by a frame is since the previous one
+
+        while (!stopped) {
+            if (!tasks.isEmpty()) {
+                runTasks();
+                frameBuffer.publish(chip8.getCpu().getScreen());
+            }
+
+            if (!running) {
+                LockSupport.park(this);
+                start = System.nanoTime();
+                frames = 0;
+                previousFrame = start;
+                continue;
+            }
+
+            Debugger debugger = chip8.getDebugger();
+            debugger.resume(); // running again after a hit
+
+            try {
+                long now = System.nanoTime();
+                chip8.frame(instructionsPerFrame, previousFrame, now);
+                previousFrame = now;
+            } catch (RuntimeException e) { // invalid opcode, or out of RAM or of the stack
+                e.printStackTrace();
+                running = false;
+                continue;
+            }
+
+            if (debugger.isStopped()) // reported to the debugger's hit listeners
+                running = false;
+
+            Screen screen = chip8.getCpu().getScreen();
+            if (screen.isDirty()) {
+                screen.takeDirtyRows();
+                frameBuffer.publish(screen);
+            }
+
+            ++frames;
+            long deadline = start + frames * FRAME_NANOS;
+
+            if (chip8.isHalted()) {
+                previousFrame = waitWhileHalted(deadline);
+                start = System.nanoTime();
+                frames = 0;
+                continue;
+            }
+
+            long now = System.nanoTime();
+            if (now - deadline > MAX_LAG_NANOS) {
+                start = now;
+                frames = 0;
+                continue;
+            }
+
+            while (!stopped && tasks.isEmpty() && (deadline - now) > 0) {
+                LockSupport.parkNanos(this, deadline - now);
+                now = System.nanoTime();
+            }
+        }
+    }
+
+    /***
+     * Parks while the CPU is halted, until a key event, a task or
+     * a pause, waking up only when a timer reaches zero. The frames due
+     * in the meantime, the first one at the given time, are run idle.
+     * Returns the time the last idle frame was due, the next frame emulates
+     * the time since.
+     */
+    private long waitWhileHalted(long nextFrame) {
+        Keyboard keyboard = chip8.getCpu().getKeyboard();
+        KeyEventQueue events = keyboard.getEvents();
+        events.setConsumer(Thread.currentThread());
+
+        Memory memory = chip8.getCpu().getMemory();
+        long timersFrames = Math.max(memory.delayTimer, memory.soundTimer);
+
+        long now = System.nanoTime();
+        while (!stopped && running && tasks.isEmpty() && events.isEmpty() && !keyboard.hasOverflow()) {
+            long timersZero = nextFrame + (timersFrames - 1) * FRAME_NANOS;
+            if (timersFrames > 0 && timersZero - now > 0)
+                LockSupport.parkNanos(this, timersZero - now);
+            else if (timersFrames > 0)
+                break;
+            else
+                LockSupport.park(this);
+
+            now = System.nanoTime();
+        }
+
+        long due = now - nextFrame < 0 ? 0 : (now - nextFrame) / FRAME_NANOS + 1;
+        chip8.idleFrames(due);
+
+        return due == 0 ? nextFrame - FRAME_NANOS : nextFrame + (due - 1) * FRAME_NANOS;
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
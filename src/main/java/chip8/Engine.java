@@ -0,0 +1,13 @@
+package chip8;
+
+/*
+    Strategy executing CPU instructions.
+ */
+public interface Engine {
+
+    /***
+     * Executes at most the given number of instructions.
+     * Returns how many instructions were executed.
+     */
+    int run(CPU cpu, int cycles) throws IllegalStateException;
+}
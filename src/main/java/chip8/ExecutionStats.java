@@ -0,0 +1,211 @@
+package chip8;
+
+import lombok.Getter;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.stream.IntStream;
+
+/*
+    Counts of executed instructions per opcode family and per address,
+    sprite draws, collisions and timer ticks. While enabled CHIP8 runs the
+    CPU with a ProfilingEngine, disabled it costs nothing but a volatile
+    read per run. The counts per address are only made once enabled.
+
+    Counted by the thread running the CPU and read by any other (JMX),
+    so values read while running may be a little behind. A reset from
+    JMX is handed to the executor given to register(), e.g. the
+    EmulationLoop, so the counters are only written by that thread.
+ */
+public class ExecutionStats implements ExecutionStatsMXBean {
+
+    public static final int HOTTEST_ADDRESSES = 20;
+
+    private volatile boolean enabled = false;
+
+    private final long[] families = new long[Instruction.FAMILIES.length];
+    private volatile long[] addresses; // null until first enabled
+    private long skippedInstructions = 0;
+    private long spriteDraws = 0;
+    private long collisions = 0;
+    private long timerTicks = 0;
+
+    private volatile Executor cpuExecutor; // runs tasks on the thread running the CPU, if registered with one
+
+    /*
+        Counts at one moment.
+     */
+    @Getter
+    public static class Counts {
+
+        private final long[] families;
+        private final long[] addresses;
+        private final long skippedInstructions;
+        private final long spriteDraws;
+        private final long collisions;
+        private final long timerTicks;
+
+        Counts(ExecutionStats stats) {
+            families = stats.families.clone();
+            addresses = stats.addresses != null ? stats.addresses.clone() : new long[Memory.RAM_SIZE];
+            skippedInstructions = stats.skippedInstructions;
+            spriteDraws = stats.spriteDraws;
+            collisions = stats.collisions;
+            timerTicks = stats.timerTicks;
+        }
+
+        public long getInstructions() {
+            return Arrays.stream(families).sum();
+        }
+
+        public long getFamilyCount(String family) {
+            int index = Arrays.asList(Instruction.FAMILIES).indexOf(family);
+            if (index == -1)
+                throw new IllegalArgumentException("Unknown opcode family: " + family);
+
+            return families[index];
+        }
+
+        public long getAddressCount(int address) {
+            return addresses[address];
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        if (enabled && addresses == null)
+            addresses = new long[Memory.RAM_SIZE];
+
+        this.enabled = enabled;
+    }
+
+    void count(Instruction instruction, int address, CPU cpu) {
+        ++families[instruction.family];
+        ++addresses[address];
+
+        if (instruction.family == Instruction.DRAW) {
+            ++spriteDraws;
+            if (cpu.getMemory().V[0xF] != 0)
+                ++collisions;
+        }
+    }
+
+    void countSkipped(int instructions) {
+        skippedInstructions += instructions;
+    }
+
+    void countTimerTick() {
+        ++timerTicks;
+    }
+
+    public Counts snapshot() {
+        return new Counts(this);
+    }
+
+    @Override
+    public long getInstructions() {
+        return Arrays.stream(families).sum();
+    }
+
+    @Override
+    public long getSkippedInstructions() {
+        return skippedInstructions;
+    }
+
+    @Override
+    public long getSpriteDraws() {
+        return spriteDraws;
+    }
+
+    @Override
+    public long getCollisions() {
+        return collisions;
+    }
+
+    @Override
+    public long getTimerTicks() {
+        return timerTicks;
+    }
+
+    @Override
+    public Map<String, Long> getFamilyCounts() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int i = 0; i < families.length; ++i)
+            result.put(Instruction.FAMILIES[i], families[i]);
+
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getHottestAddresses() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        if (addresses == null)
+            return result;
+
+        long[] counts = addresses.clone();
+        IntStream.range(0, counts.length)
+                .filter(address -> counts[address] > 0)
+                .boxed()
+                .sorted(Comparator.comparingLong((Integer address) -> counts[address]).reversed())
+                .limit(HOTTEST_ADDRESSES)
+                .forEach(address -> result.put(String.format("0x%03X", address), counts[address]));
+
+        return result;
+    }
+
+    /***
+     * Zeroes the counters on the executor given to register(), or at once
+     * if none was given: has then to be called from the thread running
+     * the CPU, or while it doesn't run.
+     */
+    @Override
+    public void reset() {
+        Executor executor = cpuExecutor;
+        if (executor != null)
+            executor.execute(this::clear);
+        else
+            clear();
+    }
+
+    private void clear() {
+        Arrays.fill(families, 0);
+        if (addresses != null)
+            Arrays.fill(addresses, 0);
+        skippedInstructions = 0;
+        spriteDraws = 0;
+        collisions = 0;
+        timerTicks = 0;
+    }
+
+    /***
+     * Registers with the platform MBean server as chip8:type=ExecutionStats,name=...
+     */
+    public ObjectName register(String name) throws JMException {
+        return register(name, null);
+    }
+
+    /***
+     * Registers as above, resets asked through JMX are run by the executor.
+     */
+    public ObjectName register(String name, Executor cpuExecutor) throws JMException {
+        this.cpuExecutor = cpuExecutor;
+        ObjectName objectName = new ObjectName("chip8:type=ExecutionStats,name=" + ObjectName.quote(name));
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(this, objectName);
+
+        return objectName;
+    }
+}
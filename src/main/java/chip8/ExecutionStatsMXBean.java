@@ -0,0 +1,39 @@
+package chip8;
+
+import java.util.Map;
+
+/*
+    JMX view of ExecutionStats.
+ */
+public interface ExecutionStatsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getInstructions();
+
+    long getSkippedInstructions();
+
+    long getSpriteDraws();
+
+    long getCollisions();
+
+    long getTimerTicks();
+
+    /***
+     * Instructions executed per opcode family, e.g. 8XY4.
+     */
+    Map<String, Long> getFamilyCounts();
+
+    /***
+     * The most executed addresses, as hex, with their counts.
+     */
+    Map<String, Long> getHottestAddresses();
+
+    /***
+     * Zeroes the counters, on the thread running the CPU if registered
+     * with its executor.
+     */
+    void reset();
+}
@@ -0,0 +1,41 @@
+package chip8;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Hands frames from the emulation thread to the display thread without
+    locks. Double buffering with a spare: the producer fills its back buffer
+    and swaps it with the shared one, the consumer swaps its front buffer
+    with the shared one when a newer frame is there. Neither side waits
+    and a frame is never modified while it is being displayed.
+ */
+public class FrameBuffer {
+
+    private static final int FRESH = 1 << 2; // bits 0-1 hold an index of buffers
+
+    private final long[][] buffers = new long[3][Screen.HEIGHT];
+
+    private final AtomicInteger shared = new AtomicInteger(1);
+    private int back = 0;   // producer only
+    private int front = 2;  // consumer only
+
+    /***
+     * Producer side: publishes a copy of the screen.
+     */
+    public void publish(Screen screen) {
+        screen.copyRows(buffers[back]);
+        back = shared.getAndSet(back | FRESH) & 3;
+    }
+
+    /***
+     * Consumer side: returns a frame published after the one returned by the
+     * previous call, or null if there is none.
+     */
+    public long[] acquire() {
+        if ((shared.get() & FRESH) == 0)
+            return null;
+
+        front = shared.getAndSet(front) & 3;
+        return buffers[front];
+    }
+}
@@ -0,0 +1,147 @@
+package chip8;
+
+import lombok.Getter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/*
+    Keys pressed in every frame of a session started from a freshly loaded
+    ROM with a seeded RNG. Applying the masks at the same frame boundaries
+    reproduces the session exactly. File format (big endian):
+
+        int     magic "C8IR"
+        short   version
+        long    RNG seed
+        int     CPU cycles per frame
+        long    CRC32 of the ROM
+        int     number of frames
+        short   keys pressed in frame i, bit k for key k
+ */
+public class InputRecording {
+
+    public static final int MAGIC = 0x43384952; // "C8IR"
+    public static final short VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 + 2 + 8 + 4 + 8 + 4;
+
+    @Getter
+    private final long seed;
+    @Getter
+    private final int cyclesPerFrame;
+    @Getter
+    private final long romChecksum;
+
+    private char[] masks;
+    @Getter
+    private int frames = 0;
+
+    public InputRecording(long seed, int cyclesPerFrame, long romChecksum) {
+        this(seed, cyclesPerFrame, romChecksum, new char[1024], 0);
+    }
+
+    private InputRecording(long seed, int cyclesPerFrame, long romChecksum, char[] masks, int frames) {
+        if (cyclesPerFrame <= 0)
+            throw new IllegalArgumentException("cyclesPerFrame: " + cyclesPerFrame);
+
+        this.seed = seed;
+        this.cyclesPerFrame = cyclesPerFrame;
+        this.romChecksum = romChecksum;
+        this.masks = masks;
+        this.frames = frames;
+    }
+
+    public static long checksum(byte[] rom) {
+        CRC32 crc = new CRC32();
+        crc.update(rom);
+        return crc.getValue();
+    }
+
+    public void addFrame(int mask) {
+        if (frames == masks.length)
+            masks = Arrays.copyOf(masks, 2 * masks.length);
+
+        masks[frames++] = (char) mask;
+    }
+
+    /***
+     * Drops the frames after the given number, e.g. after rewinding.
+     */
+    public void truncate(int frames) {
+        if (frames < 0 || frames > this.frames)
+            throw new IllegalArgumentException("frames: " + frames);
+
+        this.frames = frames;
+    }
+
+    public int getMask(int frame) {
+        return masks[frame];
+    }
+
+    /***
+     * The masks as used by BatchRunner.Job, one per frame.
+     */
+    public int[] getMasks() {
+        int[] result = new int[frames];
+        for (int i = 0; i < frames; ++i)
+            result[i] = masks[i];
+
+        return result;
+    }
+
+    public void save(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 2 * frames);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putLong(seed);
+        buffer.putInt(cyclesPerFrame);
+        buffer.putLong(romChecksum);
+        buffer.putInt(frames);
+        for (int i = 0; i < frames; ++i)
+            buffer.putChar(masks[i]);
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+    }
+
+    public static InputRecording load(File file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Not a CHIP-8 input recording");
+
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) != -1)
+                ;
+        }
+        buffer.flip();
+
+        if (buffer.getInt() != MAGIC)
+            throw new IOException("Not a CHIP-8 input recording");
+
+        short version = buffer.getShort();
+        if (version != VERSION)
+            throw new IOException("Unsupported input recording version: " + version);
+
+        long seed = buffer.getLong();
+        int cyclesPerFrame = buffer.getInt();
+        long romChecksum = buffer.getLong();
+        int frames = buffer.getInt();
+        if (cyclesPerFrame <= 0 || frames < 0 || buffer.remaining() < 2 * (long) frames)
+            throw new IOException("Truncated input recording");
+
+        char[] masks = new char[Math.max(frames, 1)];
+        buffer.asCharBuffer().get(masks, 0, frames);
+
+        return new InputRecording(seed, cyclesPerFrame, romChecksum, masks, frames);
+    }
+}
@@ -0,0 +1,88 @@
+package chip8;
+
+import java.util.Arrays;
+
+/*
+    Opcode decoded once: the handler executing it, its operands
+    and its family, e.g. 8XY4, as an index in FAMILIES.
+ */
+public final class Instruction {
+
+    public interface Handler {
+        void execute(CPU cpu, Instruction instruction);
+    }
+
+    public static final String INVALID = "invalid";
+
+    public static final String[] FAMILIES = {
+            "00E0", "00EE", "0NNN", "1NNN", "2NNN", "3XNN", "4XNN", "5XY0", "6XNN", "7XNN",
+            "8XY0", "8XY1", "8XY2", "8XY3", "8XY4", "8XY5", "8XY6", "8XY7", "8XYE", "9XY0",
+            "ANNN", "BNNN", "CXNN", "DXYN", "EX9E", "EXA1",
+            "FX07", "FX0A", "FX15", "FX18", "FX1E", "FX29", "FX33", "FX55", "FX65",
+            INVALID
+    };
+
+    public static final int DRAW = Arrays.asList(FAMILIES).indexOf("DXYN");
+
+    public final char opcode;
+    public final Handler handler;
+    public final int family;
+
+    public final int X;
+    public final int Y;
+    public final int N;
+    public final int NN;
+    public final int NNN;
+
+    public Instruction(char opcode, String family, Handler handler) {
+        this.opcode = opcode;
+        this.handler = handler;
+        this.family = Arrays.asList(FAMILIES).indexOf(family);
+        if (this.family == -1)
+            throw new IllegalArgumentException("Unknown opcode family: " + family);
+
+        X = (opcode & 0x0F00) >>> 8;
+        Y = (opcode & 0x00F0) >>> 4;
+        N = opcode & 0x000F;
+        NN = opcode & 0x00FF;
+        NNN = opcode & 0x0FFF;
+    }
+
+    public String getFamilyName() {
+        return FAMILIES[family];
+    }
+
+    public boolean isValid() {
+        return family != FAMILIES.length - 1;
+    }
+
+    public void execute(CPU cpu) {
+        handler.execute(cpu, this);
+    }
+
+    /***
+     * Whether execution may continue somewhere else than at the next
+     * instruction, or RAM is written, so that code after it can't be
+     * assumed to run straight after it.
+     */
+    public boolean endsBlock() {
+        switch (opcode & 0xF000) {
+            case 0x0000:
+                return opcode == 0x00EE;
+            case 0x1000:
+            case 0x2000:
+            case 0x3000:
+            case 0x4000:
+            case 0x5000:
+            case 0x9000:
+            case 0xB000:
+            case 0xE000:
+                return true;
+            case 0xF000:
+                int low = opcode & 0x00FF;
+                return low == 0x0A || low == 0x33 || low == 0x55;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package chip8;
+
+import java.util.Arrays;
+
+/*
+    Decoded instructions for every address of RAM. Entries are decoded
+    lazily on first execution and dropped whenever memory under them is written.
+ */
+public class InstructionCache implements Memory.WriteListener {
+
+    private final Instruction[] entries = new Instruction[Memory.RAM_SIZE];
+
+    public Instruction get(Memory memory, int address) {
+        Instruction instruction = entries[address];
+
+        if (instruction == null) {
+            int a = memory.RAM[address] & 0xFF;
+            int b = memory.RAM[address + 1] & 0xFF;
+
+            instruction = CPU.decode((char) ((a << 8) | b));
+            entries[address] = instruction;
+        }
+
+        return instruction;
+    }
+
+    public void invalidate(int from, int to) {
+        // an instruction starting one byte before the range overlaps it too
+        Arrays.fill(entries, Math.max(from - 1, 0), Math.min(to, entries.length), null);
+    }
+
+    public void invalidateAll() {
+        Arrays.fill(entries, null);
+    }
+
+    /***
+     * Takes the entries of the given pages (bit i for Memory page i) from
+     * the cache of a memory whose RAM is the same there. The instructions
+     * being immutable they're shared.
+     */
+    public void copyFrom(InstructionCache source, int pages) {
+        for (; pages != 0; pages &= pages - 1) {
+            int start = Integer.numberOfTrailingZeros(pages) * Memory.PAGE_SIZE;
+            int from = Math.max(start - 1, 0); // with the instruction starting one byte before, as invalidate()
+            System.arraycopy(source.entries, from, entries, from, start + Memory.PAGE_SIZE - from);
+        }
+    }
+
+    @Override
+    public void onWrite(int address, int length) {
+        invalidate(address, address + length);
+    }
+}
@@ -0,0 +1,20 @@
+package chip8;
+
+/*
+    Executes instructions one by one with CPU.tick(),
+    skipping idle loops to the end of the run.
+ */
+public class Interpreter implements Engine {
+
+    @Override
+    public int run(CPU cpu, int cycles) throws IllegalStateException {
+        cpu.skipIdleLoop(0); // left by ticks outside of the engine
+
+        for (int i = 0; i < cycles; ++i) {
+            cpu.tick();
+            i += cpu.skipIdleLoop(cycles - i - 1);
+        }
+
+        return cycles;
+    }
+}
@@ -0,0 +1,104 @@
+package chip8;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+    Bounded lock-free queue of key presses and releases stamped with the
+    host time (System.nanoTime()) they happened at. Any thread may offer,
+    one thread (the one running the CPU) polls. If set, the consumer thread
+    is unparked on every event, e.g. to wake it up from waiting for a key.
+
+    Every slot has a sequence number telling whose turn it is: a producer
+    claims slot p when its sequence is p, the consumer reads it when it
+    is p + 1 and frees it for the next round by setting it to p + capacity.
+ */
+public class KeyEventQueue {
+
+    private final int mask;
+    private final long[] times;
+    private final int[] events; // key | PRESSED
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong tail = new AtomicLong(); // next slot to claim
+    private long head = 0; // next slot to read, consumer only
+
+    private volatile Thread consumer;
+
+    private static final int PRESSED = 1 << 8;
+
+    public KeyEventQueue(int capacity) {
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("capacity has to be a power of 2: " + capacity);
+
+        mask = capacity - 1;
+        times = new long[capacity];
+        events = new int[capacity];
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; ++i)
+            sequences.set(i, i);
+    }
+
+    public void setConsumer(Thread consumer) {
+        this.consumer = consumer;
+    }
+
+    /***
+     * Returns false if the queue is full.
+     */
+    public boolean offer(int key, boolean pressed, long time) {
+        long position;
+        while (true) {
+            position = tail.get();
+            long sequence = sequences.get((int) position & mask);
+
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1))
+                    break;
+            } else if (sequence < position) {
+                return false;
+            }
+        }
+
+        int slot = (int) position & mask;
+        times[slot] = time;
+        events[slot] = key | (pressed ? PRESSED : 0);
+        sequences.lazySet(slot, position + 1); // publishes the fields above
+
+        wakeUp();
+        return true;
+    }
+
+    void wakeUp() {
+        Thread thread = consumer;
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    public boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+
+    /***
+     * Host time of the oldest event, the queue can't be empty.
+     */
+    public long peekTime() {
+        return times[(int) head & mask];
+    }
+
+    /***
+     * Removes the oldest event, the queue can't be empty, and applies it.
+     */
+    public void pollInto(Keyboard keyboard) {
+        int slot = (int) head & mask;
+        int event = events[slot];
+        sequences.lazySet(slot, head + mask + 1);
+        ++head;
+
+        if ((event & PRESSED) != 0)
+            keyboard.setKeyUp(event & 0xFF);
+        else
+            keyboard.setKeyDown(event & 0xFF);
+    }
+}
@@ -2,34 +2,108 @@ package chip8;
 
 import lombok.*;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/*
+    Keys pressed as a 16 bit mask, bit i for key i, updated atomically so
+    any thread can press and release keys and the CPU thread sees it.
+
+    Input from another thread should rather go through queueKeyUp() and
+    queueKeyDown(): the events are kept with their host time and applied
+    by CHIP8.frame() at the CPU cycle matching it, so presses shorter than
+    a frame aren't lost and their timing within the frame is kept.
+    Events coming while the queue is full, and after them until it's
+    drained, are merged into the last state of every key they change,
+    applied once the events queued before them are.
+ */
 @Data @EqualsAndHashCode
 public class Keyboard {
 
     static public final int NUMBER_OF_KEYS = 16;
 
+    static public final int QUEUE_CAPACITY = 64;
+
+    private static final AtomicIntegerFieldUpdater<Keyboard> KEYS =
+            AtomicIntegerFieldUpdater.newUpdater(Keyboard.class, "keys");
+
+    @Setter(AccessLevel.NONE)
+    @Getter(AccessLevel.NONE)
+    private volatile int keys = 0;
+
+    @Setter(AccessLevel.NONE)
+    private transient KeyEventQueue events = new KeyEventQueue(QUEUE_CAPACITY);
+
+    // keys changed while the queue was full: bit 16 + k if key k was, bit k if it's then pressed
     @Setter(AccessLevel.NONE)
     @Getter(AccessLevel.NONE)
-    private boolean keys[] = new boolean[NUMBER_OF_KEYS];
+    private final transient AtomicInteger overflow = new AtomicInteger();
 
     public Keyboard() {
-        for (int i = 0; i < keys.length; ++i) {
-            keys[i] = false;
-        }
     }
 
     public void setKeyUp(int i) {
         if (i >= 0 && i <= 15)
-            keys[i] = true;
+            KEYS.getAndAccumulate(this, 1 << i, (keys, key) -> keys | key);
     }
 
     public void setKeyDown(int i) {
         if (i >= 0 && i <= 15)
-            keys[i] = false;
+            KEYS.getAndAccumulate(this, 1 << i, (keys, key) -> keys & ~key);
+    }
+
+    /***
+     * Queues a press of the key at the given System.nanoTime().
+     * If the queue is full, the key is pressed once the queued
+     * events are applied.
+     */
+    public void queueKeyUp(int i, long time) {
+        if (i >= 0 && i <= 15 && (overflow.get() != 0 || !events.offer(i, true, time)))
+            overflow(i, 1 << i);
+    }
+
+    public void queueKeyDown(int i, long time) {
+        if (i >= 0 && i <= 15 && (overflow.get() != 0 || !events.offer(i, false, time)))
+            overflow(i, 0);
+    }
+
+    private void overflow(int i, int pressed) {
+        overflow.getAndUpdate(changes -> (changes & ~(1 << i)) | 1 << (16 + i) | pressed);
+        events.wakeUp();
+    }
+
+    /***
+     * True while keys changed with the queue full wait to be applied.
+     */
+    public boolean hasOverflow() {
+        return overflow.get() != 0;
+    }
+
+    /***
+     * Applies the keys changed while the queue was full, which has to be
+     * empty now. Called by the thread running the CPU.
+     */
+    public void applyOverflow() {
+        int changes = overflow.getAndSet(0);
+        if (changes != 0)
+            KEYS.getAndAccumulate(this, changes, (keys, c) -> (keys & ~(c >>> 16)) | (c & 0xFFFF));
     }
 
     public boolean isPressed(int i) {
-        return keys[i];
+        if (i < 0 || i >= NUMBER_OF_KEYS)
+            throw new ArrayIndexOutOfBoundsException(i);
+
+        return (keys & (1 << i)) != 0;
     }
-}
 
+    /***
+     * Returns the keys as a 16 bit mask, bit i set when key i is pressed.
+     */
+    public int getMask() {
+        return keys;
+    }
 
+    public void setMask(int mask) {
+        keys = mask & 0xFFFF;
+    }
+}
@@ -2,11 +2,32 @@ package chip8;
 
 import lombok.EqualsAndHashCode;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
 
 @EqualsAndHashCode
 public class Memory {
 
-    public byte[] RAM = new byte[4096];
+    public static final int RAM_SIZE = 4096;
+    public static final int PROGRAM_START = 0x200;
+
+    public static final int PAGE_SIZE = 256;
+    public static final int PAGES = RAM_SIZE / PAGE_SIZE;
+
+    // page versions not taken yet, every instance reserves a range at a time
+    private static final AtomicLong VERSIONS = new AtomicLong(1);
+    private static final long RESERVED_VERSIONS = 1 << 16;
+
+    public interface WriteListener {
+        void onWrite(int address, int length);
+    }
+
+    // Own copy of the whole RAM, even when loaded from a RomImage: code
+    // writes it directly, without notifyWrite() for every byte, so its
+    // pages can't be shared with other memories. See BatchEngine for that.
+    public byte[] RAM = new byte[RAM_SIZE];
     public byte[] V = new byte[16];
     public char I;
     public char PC;
@@ -17,12 +38,71 @@ public class Memory {
     public char delayTimer;
     public char soundTimer;
 
+    private transient List<WriteListener> writeListeners = new ArrayList<>();
+
+    // Version of the content of every RAM page, a new one when it's written.
+    // Versions are unique to an instance unless copied by copyFrom(), so
+    // pages of the same version have the same content.
+    private final transient long[] pageVersions = new long[PAGES];
+    private transient long nextVersion = 0;
+    private transient long reservedVersions = 0;
+
+    // Zobrist keys of the 8 byte words of RAM and of the registers
+    private static final long[] RAM_KEYS = keys(RAM_SIZE / 8, 0x52414D);
+    private static final long[] REGISTER_KEYS = keys(8, 0x524547);
+
+    // hash of every RAM page and the version it was computed for
+    private final transient long[] pageHashes = new long[PAGES];
+    private final transient long[] hashedVersions = new long[PAGES];
+
+    static long[] keys(int count, long seed) {
+        Rng rng = new Rng(seed);
+        long[] keys = new long[count];
+        for (int i = 0; i < count; ++i)
+            keys[i] = rng.nextLong();
+
+        return keys;
+    }
+
+    // versions for pages outside of any instance, see RomImage
+    static long reserveVersions(int count) {
+        return VERSIONS.getAndAdd(count);
+    }
+
     public Memory() {
         System.arraycopy(FontsData.data, 0, RAM, 0, FontsData.data.length);
+        notifyWrite(0, RAM_SIZE);
+    }
+
+    public void addWriteListener(WriteListener listener) {
+        writeListeners.add(listener);
+    }
+
+    public void removeWriteListener(WriteListener listener) {
+        writeListeners.remove(listener);
+    }
+
+    /***
+     * Has to be called after RAM[address .. address + length) was modified,
+     * so decoded code covering that range gets invalidated.
+     */
+    public void notifyWrite(int address, int length) {
+        if (nextVersion == reservedVersions) {
+            nextVersion = VERSIONS.getAndAdd(RESERVED_VERSIONS);
+            reservedVersions = nextVersion + RESERVED_VERSIONS;
+        }
+
+        long version = nextVersion++;
+        int last = Math.min(address + length, RAM_SIZE) - 1;
+        for (int page = address / PAGE_SIZE; page <= last / PAGE_SIZE; ++page)
+            pageVersions[page] = version;
+
+        for (int i = 0; i < writeListeners.size(); ++i)
+            writeListeners.get(i).onWrite(address, length);
     }
 
     public void clear() {
-        for (int i = 0x200; i < RAM.length; ++i)
+        for (int i = PROGRAM_START; i < RAM.length; ++i)
             RAM[i] = 0;
         for (int i = 0; i < V.length; ++i)
             V[i] = 0;
@@ -33,12 +113,130 @@ public class Memory {
         SP = 0;
         delayTimer = 0;
         soundTimer = 0;
+
+        notifyWrite(PROGRAM_START, RAM.length - PROGRAM_START);
+    }
+
+    /***
+     * Makes this memory the same as the source, without allocating.
+     * Only the RAM pages written since they were last copied between the
+     * two are copied, listeners are notified of those. Returns them,
+     * bit i for page i.
+     */
+    public int copyFrom(Memory source) {
+        int copied = 0;
+        for (int page = 0; page < PAGES; ++page) {
+            if (pageVersions[page] != source.pageVersions[page]) {
+                System.arraycopy(source.RAM, page * PAGE_SIZE, RAM, page * PAGE_SIZE, PAGE_SIZE);
+                copied |= 1 << page;
+            }
+        }
+
+        System.arraycopy(source.V, 0, V, 0, V.length);
+        I = source.I;
+        PC = source.PC;
+        System.arraycopy(source.stack, 0, stack, 0, stack.length);
+        SP = source.SP;
+        delayTimer = source.delayTimer;
+        soundTimer = source.soundTimer;
+
+        for (int pages = copied; pages != 0; pages &= pages - 1) {
+            int page = Integer.numberOfTrailingZeros(pages);
+            notifyWrite(page * PAGE_SIZE, PAGE_SIZE);
+        }
+        System.arraycopy(source.pageVersions, 0, pageVersions, 0, PAGES);
+        System.arraycopy(source.pageHashes, 0, pageHashes, 0, PAGES);
+        System.arraycopy(source.hashedVersions, 0, hashedVersions, 0, PAGES);
+
+        return copied;
+    }
+
+    /***
+     * 64 bit hash of RAM and registers, the same for equal memories.
+     * Zobrist-style: XOR of the keyed hashes of every 8 bytes. Hashes of
+     * RAM pages are kept until they're written, so only those written
+     * since the previous call and the registers are hashed.
+     */
+    public long stateHash() {
+        long hash = 0;
+        for (int page = 0; page < PAGES; ++page) {
+            if (hashedVersions[page] != pageVersions[page]) {
+                pageHashes[page] = hashPage(page);
+                hashedVersions[page] = pageVersions[page];
+            }
+            hash ^= pageHashes[page];
+        }
+
+        hash ^= Rng.mix(word(V, 0) ^ REGISTER_KEYS[0]);
+        hash ^= Rng.mix(word(V, 8) ^ REGISTER_KEYS[1]);
+        hash ^= Rng.mix(((long) I << 48 | (long) PC << 32 | (long) delayTimer << 16 | soundTimer) ^ REGISTER_KEYS[2]);
+        hash ^= Rng.mix((SP & 0xFFL) ^ REGISTER_KEYS[3]);
+        for (int i = 0; i < stack.length; i += 4) {
+            long word = (long) stack[i] << 48 | (long) stack[i + 1] << 32 | (long) stack[i + 2] << 16 | stack[i + 3];
+            hash ^= Rng.mix(word ^ REGISTER_KEYS[4 + i / 4]);
+        }
+
+        return hash;
+    }
+
+    private long hashPage(int page) {
+        long hash = 0;
+        for (int address = page * PAGE_SIZE; address < (page + 1) * PAGE_SIZE; address += 8)
+            hash ^= Rng.mix(word(RAM, address) ^ RAM_KEYS[address / 8]);
+
+        return hash;
     }
 
+    private static long word(byte[] bytes, int offset) {
+        long result = 0;
+        for (int i = offset; i < offset + 8; ++i)
+            result = result << 8 | (bytes[i] & 0xFF);
+
+        return result;
+    }
+
+    public static final int MAX_PROGRAM_SIZE = RAM_SIZE - PROGRAM_START;
+
     public void loadProgram(byte[] program) {
+        if (program.length > MAX_PROGRAM_SIZE)
+            throw new IllegalArgumentException("Program too large: " + program.length + " bytes");
+
         clear();
-        System.arraycopy(program, 0, RAM, 512, program.length);
-        PC = 0x200;
+        System.arraycopy(program, 0, RAM, PROGRAM_START, program.length);
+        PC = PROGRAM_START;
+
+        notifyWrite(PROGRAM_START, program.length);
+    }
+
+    /***
+     * Same as loadProgram() with the program of the image, but only the
+     * pages which differ from those of the image (written since it was
+     * last loaded, or another program) are copied into RAM.
+     */
+    public void load(RomImage image) {
+        int copied = 0;
+        for (int page = 0; page < PAGES; ++page) {
+            if (pageVersions[page] != image.getVersion(page)) {
+                System.arraycopy(image.getPage(page), 0, RAM, page * PAGE_SIZE, PAGE_SIZE);
+                copied |= 1 << page;
+            }
+        }
+
+        for (int i = 0; i < V.length; ++i)
+            V[i] = 0;
+        I = 0;
+        PC = PROGRAM_START;
+        for (int i = 0; i < stack.length; ++i)
+            stack[i] = 0;
+        SP = 0;
+        delayTimer = 0;
+        soundTimer = 0;
+
+        for (int pages = copied; pages != 0; pages &= pages - 1) {
+            int page = Integer.numberOfTrailingZeros(pages);
+            notifyWrite(page * PAGE_SIZE, PAGE_SIZE);
+            pageVersions[page] = image.getVersion(page);
+        }
     }
 
 
@@ -0,0 +1,36 @@
+package chip8;
+
+/*
+    Interpreter counting every instruction into ExecutionStats.
+    CHIP8 runs the CPU with it instead of its engine while the stats
+    are enabled.
+ */
+public class ProfilingEngine implements Engine {
+
+    private final ExecutionStats stats;
+
+    public ProfilingEngine(ExecutionStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public int run(CPU cpu, int cycles) throws IllegalStateException {
+        Memory memory = cpu.getMemory();
+        cpu.skipIdleLoop(0); // left by ticks outside of the engine
+
+        for (int i = 0; i < cycles; ++i) {
+            int address = memory.PC;
+            Instruction instruction = cpu.fetchInstruction();
+            instruction.execute(cpu);
+            stats.count(instruction, address, cpu);
+
+            int skipped = cpu.skipIdleLoop(cycles - i - 1);
+            if (skipped != 0) {
+                stats.countSkipped(skipped);
+                i += skipped;
+            }
+        }
+
+        return cycles;
+    }
+}
@@ -0,0 +1,276 @@
+package chip8;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+    Keeps the last frames of emulation for rewinding. Every keyframeInterval
+    frames a full Snapshot is recorded, the frames in between are recorded
+    as deltas against the previous frame: registers, timers, keys, RNG, the
+    256 byte RAM pages written and the screen rows changed.
+
+    Records are stored one after another in a fixed size circular byte
+    array. The oldest frames are dropped when it (or the frame limit) is
+    full. A frame is restored by applying its keyframe and the deltas up to it,
+    so up to keyframeInterval frames more than maxFrames are kept: the
+    oldest interval goes once all of it is older than maxFrames.
+ */
+public class RewindBuffer implements Memory.WriteListener {
+
+    public static final int PAGE_SIZE = Memory.PAGE_SIZE;
+    public static final int PAGES = Memory.PAGES;
+
+    private static final byte KEYFRAME = 0;
+    private static final byte DELTA = 1;
+
+    private static final int REGISTERS_SIZE = 16 + 2 + 2 + 2 * 16 + 1 + 2 + 2 + 2 + 8;
+    private static final int MAX_DELTA_SIZE = 1 + REGISTERS_SIZE
+            + 4 + Memory.RAM_SIZE
+            + 4 + 8 * Screen.HEIGHT;
+    private static final int MAX_RECORD_SIZE = Math.max(1 + Snapshot.SIZE, MAX_DELTA_SIZE);
+
+    private final int keyframeInterval;
+
+    private final byte[] data;
+    private long head = 0; // total bytes ever written, data[head % data.length] is the next free byte
+
+    private final int slots; // frames kept at most, maxFrames + keyframeInterval
+    private final long[] frameOffsets;
+    private final int[] frameLengths;
+    private long firstFrame = 0; // number of the oldest frame kept
+    private long nextFrame = 0;
+    private int framesSinceKeyframe = 0;
+
+    private final ByteBuffer record = ByteBuffer.allocate(MAX_RECORD_SIZE);
+
+    // state of the last recorded frame, deltas are taken against it
+    private Memory memory;
+    private int writtenPages = 0;
+    private final long[] recordedRows = new long[Screen.HEIGHT];
+    private final long[] rows = new long[Screen.HEIGHT];
+
+    @Getter
+    private final int maxFrames;
+
+    public RewindBuffer(int maxFrames, int keyframeInterval) {
+        this(maxFrames, keyframeInterval,
+                ((maxFrames + keyframeInterval) / keyframeInterval + 2) * (1 + Snapshot.SIZE)
+                        + (maxFrames + keyframeInterval) * 512);
+    }
+
+    public RewindBuffer(int maxFrames, int keyframeInterval, int capacity) {
+        if (maxFrames <= 0 || keyframeInterval <= 0 || capacity < 2 * MAX_RECORD_SIZE)
+            throw new IllegalArgumentException("RewindBuffer too small");
+
+        this.maxFrames = maxFrames;
+        this.keyframeInterval = keyframeInterval;
+        data = new byte[capacity];
+        slots = maxFrames + keyframeInterval;
+        frameOffsets = new long[slots];
+        frameLengths = new int[slots];
+    }
+
+    /***
+     * Number of past frames which can be restored, maxFrames once
+     * that many were recorded unless the capacity is too small.
+     */
+    public int getAvailableFrames() {
+        return (int) Math.min(nextFrame - firstFrame, maxFrames);
+    }
+
+    public void clear() {
+        firstFrame = nextFrame;
+        framesSinceKeyframe = 0;
+    }
+
+    /***
+     * Records the current state as the newest frame.
+     */
+    public void record(CPU cpu) {
+        if (attach(cpu.getMemory()))
+            clear();
+
+        record.clear();
+        if (nextFrame == firstFrame || framesSinceKeyframe + 1 >= keyframeInterval) {
+            record.put(KEYFRAME);
+            Snapshot.write(cpu, record);
+            framesSinceKeyframe = 0;
+        } else {
+            record.put(DELTA);
+            writeDelta(cpu);
+            ++framesSinceKeyframe;
+        }
+
+        cpu.getScreen().copyRows(recordedRows);
+        writtenPages = 0;
+
+        record.flip();
+        append(record.array(), record.limit());
+    }
+
+    /***
+     * Restores the state from the given number of frames ago (0 is the
+     * newest recorded frame) and drops the frames recorded after it.
+     */
+    public void rewind(int framesAgo, CPU cpu) throws IOException {
+        if (framesAgo < 0 || framesAgo >= getAvailableFrames())
+            throw new IllegalArgumentException("Frame not available: " + framesAgo);
+
+        long target = nextFrame - 1 - framesAgo;
+
+        long keyframe = target;
+        while (readType(keyframe) != KEYFRAME)
+            --keyframe;
+
+        attach(cpu.getMemory());
+        cpu.getScreen().copyRows(rows);
+        for (long frame = keyframe; frame <= target; ++frame) {
+            ByteBuffer buffer = read(frame);
+            if (buffer.get() == KEYFRAME) {
+                Snapshot.read(buffer, cpu);
+                cpu.getScreen().copyRows(rows);
+            } else {
+                readDelta(buffer, cpu);
+            }
+        }
+        cpu.getScreen().setRows(rows);
+
+        head = frameOffsets[index(target)] + frameLengths[index(target)];
+        nextFrame = target + 1;
+        framesSinceKeyframe = (int) (target - keyframe);
+
+        cpu.getScreen().copyRows(recordedRows);
+        writtenPages = 0;
+    }
+
+    private void writeDelta(CPU cpu) {
+        Memory memory = cpu.getMemory();
+
+        record.put(memory.V);
+        record.putChar(memory.I);
+        record.putChar(memory.PC);
+        for (char address : memory.stack)
+            record.putChar(address);
+        record.put(memory.SP);
+        record.putChar(memory.delayTimer);
+        record.putChar(memory.soundTimer);
+        record.putShort((short) cpu.getKeyboard().getMask());
+        record.putLong(cpu.getRNG().getState());
+
+        record.putInt(writtenPages);
+        for (int page = 0; page < PAGES; ++page)
+            if ((writtenPages & (1 << page)) != 0)
+                record.put(memory.RAM, page * PAGE_SIZE, PAGE_SIZE);
+
+        Screen screen = cpu.getScreen();
+        int changedRows = 0;
+        for (int y = 0; y < Screen.HEIGHT; ++y)
+            if (screen.getRow(y) != recordedRows[y])
+                changedRows |= 1 << y;
+
+        record.putInt(changedRows);
+        for (int y = 0; y < Screen.HEIGHT; ++y)
+            if ((changedRows & (1 << y)) != 0)
+                record.putLong(screen.getRow(y));
+    }
+
+    private void readDelta(ByteBuffer buffer, CPU cpu) {
+        Memory memory = cpu.getMemory();
+
+        buffer.get(memory.V);
+        memory.I = buffer.getChar();
+        memory.PC = buffer.getChar();
+        for (int i = 0; i < memory.stack.length; ++i)
+            memory.stack[i] = buffer.getChar();
+        memory.SP = buffer.get();
+        memory.delayTimer = buffer.getChar();
+        memory.soundTimer = buffer.getChar();
+        cpu.getKeyboard().setMask(buffer.getShort() & 0xFFFF);
+        cpu.getRNG().setState(buffer.getLong());
+
+        int pages = buffer.getInt();
+        for (int page = 0; page < PAGES; ++page) {
+            if ((pages & (1 << page)) != 0) {
+                buffer.get(memory.RAM, page * PAGE_SIZE, PAGE_SIZE);
+                memory.notifyWrite(page * PAGE_SIZE, PAGE_SIZE);
+            }
+        }
+
+        int changedRows = buffer.getInt();
+        for (int y = 0; y < Screen.HEIGHT; ++y)
+            if ((changedRows & (1 << y)) != 0)
+                rows[y] = buffer.getLong();
+    }
+
+    private int index(long frame) {
+        return (int) (frame % slots);
+    }
+
+    private void append(byte[] bytes, int length) {
+        if (nextFrame - firstFrame == slots)
+            dropOldestFrame();
+        while (nextFrame > firstFrame && head + length - frameOffsets[index(firstFrame)] > data.length)
+            dropOldestFrame();
+
+        int offset = (int) (head % data.length);
+        int first = Math.min(length, data.length - offset);
+        System.arraycopy(bytes, 0, data, offset, first);
+        System.arraycopy(bytes, first, data, 0, length - first);
+
+        frameOffsets[index(nextFrame)] = head;
+        frameLengths[index(nextFrame)] = length;
+        head += length;
+        ++nextFrame;
+
+        skipToKeyframe();
+    }
+
+    private void dropOldestFrame() {
+        ++firstFrame;
+        skipToKeyframe();
+    }
+
+    // frames before the oldest keyframe can't be restored
+    private void skipToKeyframe() {
+        while (firstFrame < nextFrame && readType(firstFrame) != KEYFRAME)
+            ++firstFrame;
+    }
+
+    private byte readType(long frame) {
+        return data[(int) (frameOffsets[index(frame)] % data.length)];
+    }
+
+    private ByteBuffer read(long frame) {
+        int offset = (int) (frameOffsets[index(frame)] % data.length);
+        int length = frameLengths[index(frame)];
+
+        int first = Math.min(length, data.length - offset);
+        byte[] bytes = record.array();
+        System.arraycopy(data, offset, bytes, 0, first);
+        System.arraycopy(data, 0, bytes, first, length - first);
+
+        return ByteBuffer.wrap(bytes, 0, length);
+    }
+
+    // returns true if the memory changed
+    private boolean attach(Memory memory) {
+        if (this.memory == memory)
+            return false;
+
+        if (this.memory != null)
+            this.memory.removeWriteListener(this);
+
+        this.memory = memory;
+        memory.addWriteListener(this);
+        return true;
+    }
+
+    @Override
+    public void onWrite(int address, int length) {
+        int last = Math.min(address + length, Memory.RAM_SIZE) - 1;
+        for (int page = address / PAGE_SIZE; page <= last / PAGE_SIZE; ++page)
+            writtenPages |= 1 << page;
+    }
+}
@@ -0,0 +1,43 @@
+package chip8;
+
+/*
+    Random number generator for CXNN (SplitMix64). Its whole state is one
+    long, so it can be seeded, saved and restored for reproducible runs.
+ */
+public class Rng {
+
+    private long state;
+
+    public Rng() {
+        this(System.nanoTime() ^ Double.doubleToLongBits(Math.random()));
+    }
+
+    public Rng(long seed) {
+        state = seed;
+    }
+
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    public long nextLong() {
+        return mix(state += 0x9E3779B97F4A7C15L);
+    }
+
+    /***
+     * Scrambles the bits of z (SplitMix64 finalizer), e.g. for hashing.
+     */
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public int nextByte() {
+        return (int) (nextLong() >>> 56);
+    }
+}
@@ -0,0 +1,133 @@
+package chip8;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+    The RAM of a program just loaded (fonts and program) as immutable
+    256 byte pages, built once for every machine running it. Images are kept per program content and reference
+    counted: acquire() returns the image of a program, made on the first
+    call, and every acquire() has to be matched by a release(), the last
+    one drops the image. Pages are never modified, the font page and
+    empty pages are the same for every image.
+
+    Every page has a Memory page version of its own, so a Memory loaded
+    from an image only copies the pages written since it last was
+    (Memory.load()), it still has its own full RAM. Only BatchEngine
+    instances share the pages: they point at them until they write them.
+    Instructions are decoded by address once for all.
+ */
+public final class RomImage {
+
+    private static final int PAGE_SIZE = Memory.PAGE_SIZE;
+    private static final int PAGES = Memory.PAGES;
+
+    private static final Map<ByteBuffer, RomImage> IMAGES = new HashMap<>();
+
+    private static final byte[] ZERO_PAGE = new byte[PAGE_SIZE];
+    private static final byte[] FONT_PAGE = Arrays.copyOf(FontsData.data, PAGE_SIZE);
+    private static final long ZERO_VERSION = Memory.reserveVersions(2);
+    private static final long FONT_VERSION = ZERO_VERSION + 1;
+
+    private final byte[] program;
+    private final byte[][] pages = new byte[PAGES][];
+    private final long[] versions = new long[PAGES];
+
+    // instructions at every address, decoded on first use
+    final Instruction[] instructions = new Instruction[Memory.RAM_SIZE];
+
+    private int references = 0; // guarded by IMAGES
+
+    private RomImage(byte[] program) {
+        this.program = program;
+
+        byte[] image = new byte[Memory.RAM_SIZE];
+        System.arraycopy(program, 0, image, Memory.PROGRAM_START, program.length);
+
+        long version = Memory.reserveVersions(PAGES);
+        pages[0] = FONT_PAGE; // programs start after the fonts page
+        versions[0] = FONT_VERSION;
+        for (int page = 1; page < PAGES; ++page) {
+            byte[] bytes = Arrays.copyOfRange(image, page * PAGE_SIZE, (page + 1) * PAGE_SIZE);
+            if (Arrays.equals(bytes, ZERO_PAGE)) {
+                pages[page] = ZERO_PAGE;
+                versions[page] = ZERO_VERSION;
+            } else {
+                pages[page] = bytes;
+                versions[page] = version + page;
+            }
+        }
+    }
+
+    /***
+     * The image of the program, shared with every other holder of it.
+     * Has to be released once not used anymore.
+     */
+    public static RomImage acquire(byte[] program) {
+        if (program.length > Memory.MAX_PROGRAM_SIZE)
+            throw new IllegalArgumentException("Program too large: " + program.length + " bytes");
+
+        synchronized (IMAGES) {
+            ByteBuffer key = ByteBuffer.wrap(program);
+            RomImage image = IMAGES.get(key);
+            if (image == null) {
+                image = new RomImage(program.clone());
+                IMAGES.put(ByteBuffer.wrap(image.program), image);
+            }
+
+            ++image.references;
+            return image;
+        }
+    }
+
+    /***
+     * Gives back a reference taken by acquire(). Pages of the image stay
+     * valid for whoever still points at them, but the next acquire()
+     * of the program makes a new image once all are released.
+     */
+    public void release() {
+        synchronized (IMAGES) {
+            if (references == 0)
+                throw new IllegalStateException("Image already released");
+
+            if (--references == 0)
+                IMAGES.remove(ByteBuffer.wrap(program));
+        }
+    }
+
+    /***
+     * Number of images currently acquired.
+     */
+    public static int getImages() {
+        synchronized (IMAGES) {
+            return IMAGES.size();
+        }
+    }
+
+    public int getReferences() {
+        synchronized (IMAGES) {
+            return references;
+        }
+    }
+
+    public byte[] getProgram() {
+        return program.clone();
+    }
+
+    public int getProgramLength() {
+        return program.length;
+    }
+
+    /***
+     * The bytes of page i, which must not be modified.
+     */
+    byte[] getPage(int page) {
+        return pages[page];
+    }
+
+    long getVersion(int page) {
+        return versions[page];
+    }
+}
@@ -2,36 +2,115 @@ package chip8;
 
 import lombok.EqualsAndHashCode;
 
+import java.util.Arrays;
+
+/*
+    Framebuffer stored as one long per row, pixel (0, y) being
+    the most significant bit of rows[y] and (63, y) the least significant.
+    Rows changed since the last takeDirtyRows() are tracked as a bitmask.
+ */
 @EqualsAndHashCode
 public class Screen {
 
     public final static int HEIGHT = 32;
-    public final static int WIDTH = 64;
+    public final static int WIDTH = 64; // = Long.SIZE, one row fits in one long
+
+    private long rows[] = new long[HEIGHT];
 
-    private boolean pixels[][] = new boolean[HEIGHT][WIDTH];
+    private transient int dirtyRows = 0;
 
 
+    private static long mask(int x) {
+        return Long.MIN_VALUE >>> x;
+    }
+
     public void setPixel(int x, int y) {
-        pixels[y][x] = true;
+        if ((rows[y] & mask(x)) == 0) {
+            rows[y] |= mask(x);
+            dirtyRows |= 1 << y;
+        }
     }
 
     public boolean flipPixel(int x, int y) {
-        if (pixels[y][x] == true)
-            pixels[y][x] = false;
-        else
-            pixels[y][x] = true;
+        rows[y] ^= mask(x);
+        dirtyRows |= 1 << y;
 
-        return pixels[y][x];
+        return (rows[y] & mask(x)) != 0;
+    }
+
+    /***
+     * XORs bits into row y.
+     * Returns true if any pixel was flipped from set to unset (collision).
+     */
+    public boolean xorRow(int y, long bits) {
+        long row = rows[y];
+        rows[y] = row ^ bits;
+
+        if (bits != 0)
+            dirtyRows |= 1 << y;
+
+        return (row & bits) != 0;
     }
 
     public void clear() {
-        for (int i = 0; i < Screen.HEIGHT; ++i)
-            for (int j = 0; j < Screen.WIDTH; ++j)
-                pixels[i][j] = false;
+        for (int y = 0; y < HEIGHT; ++y)
+            if (rows[y] != 0)
+                dirtyRows |= 1 << y;
+
+        Arrays.fill(rows, 0);
     }
 
     public boolean getPixel(int x, int y) {
-        return pixels[y][x];
+        return (rows[y] & mask(x)) != 0;
+    }
+
+    public long getRow(int y) {
+        return rows[y];
+    }
+
+    public void copyRows(long[] destination) {
+        System.arraycopy(rows, 0, destination, 0, HEIGHT);
+    }
+
+    public void setRows(long[] source) {
+        for (int y = 0; y < HEIGHT; ++y) {
+            if (rows[y] != source[y]) {
+                rows[y] = source[y];
+                dirtyRows |= 1 << y;
+            }
+        }
+    }
+
+    public void copyFrom(Screen source) {
+        setRows(source.rows);
+    }
+
+    private static final long[] ROW_KEYS = Memory.keys(HEIGHT, 0x524F57);
+
+    /***
+     * 64 bit hash of the pixels, the same for equal screens.
+     */
+    public long stateHash() {
+        long hash = 0;
+        for (int y = 0; y < HEIGHT; ++y)
+            hash ^= Rng.mix(rows[y] ^ ROW_KEYS[y]);
+
+        return hash;
+    }
+
+    public boolean isDirty() {
+        return dirtyRows != 0;
+    }
+
+    /***
+     * Returns the rows changed since the previous call (bit y for row y)
+     * and starts tracking changes anew.
+     */
+    public int takeDirtyRows() {
+        int result = dirtyRows;
+        dirtyRows = 0;
+
+        return result;
     }
 
 }
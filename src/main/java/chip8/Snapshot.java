@@ -0,0 +1,118 @@
+package chip8;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/*
+    Binary save state of a CPU (big endian):
+
+        int     magic "C8ST"
+        short   version
+        byte    RAM[4096]
+        byte    V[16]
+        short   I, PC
+        short   stack[16]
+        byte    SP
+        short   delayTimer, soundTimer
+        short   keys pressed, bit i for key i
+        long    screen rows[32], pixel x in bit 63 - x
+        long    RNG state
+ */
+public class Snapshot {
+
+    public static final int MAGIC = 0x43385354; // "C8ST"
+    public static final short VERSION = 1;
+
+    public static final int SIZE = 4 + 2
+            + Memory.RAM_SIZE + 16 + 2 + 2 + 2 * 16 + 1 + 2 + 2
+            + 2
+            + 8 * Screen.HEIGHT
+            + 8;
+
+    public static void write(CPU cpu, ByteBuffer buffer) {
+        Memory memory = cpu.getMemory();
+        Screen screen = cpu.getScreen();
+
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+
+        buffer.put(memory.RAM);
+        buffer.put(memory.V);
+        buffer.putChar(memory.I);
+        buffer.putChar(memory.PC);
+        for (char address : memory.stack)
+            buffer.putChar(address);
+        buffer.put(memory.SP);
+        buffer.putChar(memory.delayTimer);
+        buffer.putChar(memory.soundTimer);
+
+        buffer.putShort((short) cpu.getKeyboard().getMask());
+
+        for (int y = 0; y < Screen.HEIGHT; ++y)
+            buffer.putLong(screen.getRow(y));
+
+        buffer.putLong(cpu.getRNG().getState());
+    }
+
+    /***
+     * Restores the CPU from a snapshot written by write().
+     */
+    public static void read(ByteBuffer buffer, CPU cpu) throws IOException {
+        if (buffer.remaining() < SIZE)
+            throw new IOException("Truncated save state");
+        if (buffer.getInt() != MAGIC)
+            throw new IOException("Not a CHIP-8 save state");
+
+        short version = buffer.getShort();
+        if (version != VERSION)
+            throw new IOException("Unsupported save state version: " + version);
+
+        Memory memory = cpu.getMemory();
+        buffer.get(memory.RAM);
+        buffer.get(memory.V);
+        memory.I = buffer.getChar();
+        memory.PC = buffer.getChar();
+        for (int i = 0; i < memory.stack.length; ++i)
+            memory.stack[i] = buffer.getChar();
+        memory.SP = buffer.get();
+        memory.delayTimer = buffer.getChar();
+        memory.soundTimer = buffer.getChar();
+        memory.notifyWrite(0, memory.RAM.length);
+
+        cpu.getKeyboard().setMask(buffer.getShort() & 0xFFFF);
+
+        long[] rows = new long[Screen.HEIGHT];
+        for (int y = 0; y < Screen.HEIGHT; ++y)
+            rows[y] = buffer.getLong();
+        cpu.getScreen().setRows(rows);
+
+        cpu.getRNG().setState(buffer.getLong());
+    }
+
+    public static void save(CPU cpu, File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        write(cpu, buffer);
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+    }
+
+    public static void load(File file, CPU cpu) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer) != -1)
+                ;
+        }
+
+        buffer.flip();
+        read(buffer, cpu);
+    }
+}
@@ -0,0 +1,165 @@
+package chip8;
+
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/*
+    Reads back, instruction by instruction, a trace written by TraceWriter.
+ */
+public class TraceReader implements Closeable {
+
+    /*
+        One executed instruction.
+     */
+    @Getter
+    public static class Entry {
+
+        private final int PC;
+        private final char opcode;
+        private final char I;
+        private final int changedRegisters; // bit i for Vi
+        private final byte[] V; // after the instruction, in a DELTA trace only the changed ones
+
+        Entry(int PC, char opcode, char I, int changedRegisters, byte[] V) {
+            this.PC = PC;
+            this.opcode = opcode;
+            this.I = I;
+            this.changedRegisters = changedRegisters;
+            this.V = V;
+        }
+
+        public boolean isChanged(int register) {
+            return (changedRegisters & (1 << register)) != 0;
+        }
+
+        public int getV(int register) {
+            return V[register] & 0xFF;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder(String.format("%03X %04X I=%03X", PC, (int) opcode, (int) I));
+            for (int i = 0; i < V.length; ++i) {
+                if (isChanged(i))
+                    result.append(String.format(" V%X=%02X", i, V[i] & 0xFF));
+            }
+
+            return result.toString();
+        }
+    }
+
+    private final FileChannel channel;
+    @Getter
+    private final boolean delta;
+    private final int recordSize;
+    @Getter
+    private final long records;
+
+    private MappedByteBuffer buffer;
+    private long chunkStart = TraceWriter.HEADER_SIZE;
+    private long read = 0;
+
+    public TraceReader(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(TraceWriter.HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header, header.position()) != -1)
+                ;
+            header.flip();
+
+            if (header.remaining() < TraceWriter.HEADER_SIZE || header.getInt() != TraceWriter.MAGIC)
+                throw new IOException("Not a CHIP-8 trace");
+
+            short version = header.getShort();
+            if (version != TraceWriter.VERSION)
+                throw new IOException("Unsupported trace version: " + version);
+
+            byte format = header.get();
+            if (format != TraceWriter.FULL && format != TraceWriter.DELTA)
+                throw new IOException("Unknown trace format: " + format);
+            delta = format == TraceWriter.DELTA;
+            recordSize = header.get();
+            records = header.getLong();
+
+            if (recordSize != (delta ? TraceWriter.DELTA_RECORD_SIZE : TraceWriter.FULL_RECORD_SIZE)
+                    || records < 0 || channel.size() < TraceWriter.HEADER_SIZE + records * recordSize)
+                throw new IOException("Truncated trace");
+
+            map();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void map() throws IOException {
+        long size = Math.min(TraceWriter.CHUNK_SIZE, TraceWriter.HEADER_SIZE + records * recordSize - chunkStart);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, size);
+    }
+
+    /***
+     * The next executed instruction, null at the end of the trace.
+     */
+    public Entry read() throws IOException {
+        if (read == records)
+            return null;
+
+        nextRecord();
+        int PC = buffer.getChar();
+        char opcode = buffer.getChar();
+        char I = buffer.getChar();
+        byte[] V = new byte[16];
+
+        if (!delta) {
+            int changed = buffer.getChar();
+            buffer.get(V);
+            ++read;
+            return new Entry(PC, opcode, I, changed, V);
+        }
+
+        int changed = readChange(V);
+        while (read < records) {
+            nextRecord();
+            if (buffer.getChar(buffer.position()) != TraceWriter.CONTINUATION)
+                break;
+
+            buffer.position(buffer.position() + 6);
+            changed |= readChange(V);
+        }
+
+        return new Entry(PC, opcode, I, changed, V);
+    }
+
+    // register and value of a DELTA record
+    private int readChange(byte[] V) {
+        int register = buffer.get() & 0xFF;
+        byte value = buffer.get();
+        ++read;
+
+        if (register == TraceWriter.NO_REGISTER)
+            return 0;
+
+        V[register & 0xF] = value;
+        return 1 << (register & 0xF);
+    }
+
+    private void nextRecord() throws IOException {
+        if (!buffer.hasRemaining()) {
+            chunkStart += TraceWriter.CHUNK_SIZE;
+            map();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        channel.close();
+    }
+}
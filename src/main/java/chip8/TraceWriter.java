@@ -0,0 +1,169 @@
+package chip8;
+
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/*
+    Writes a record of every executed instruction to a file mapped in
+    memory chunk by chunk, so a trace costs a few stores per instruction.
+    Records have a fixed size, the format is fixed at creation
+    (big endian, read back with TraceReader):
+
+        header
+        int     magic "C8TR"
+        short   version
+        byte    format, FULL or DELTA
+        byte    record size
+        long    number of records, written when closed
+
+        FULL record, 24 bytes
+        char    PC
+        char    opcode
+        char    I after the instruction
+        char    V registers changed by it, bit i for Vi
+        byte    V0 .. VF after it
+
+        DELTA record, 8 bytes
+        char    PC
+        char    opcode
+        char    I after the instruction
+        byte    a changed V register, NO_REGISTER if none
+        byte    its new value
+        followed by a record with PC CONTINUATION for every other changed
+        register, e.g. VF of 8XY4 or the registers loaded by FX65.
+
+    The file is cut after the last record when closed. Where a file can't
+    be truncated while a chunk of it is still mapped (Windows) it keeps
+    the zeros up to the end of the last chunk, which TraceReader ignores:
+    it reads the number of records given by the header.
+ */
+public class TraceWriter implements Closeable {
+
+    public static final int MAGIC = 0x43385452; // "C8TR"
+    public static final short VERSION = 1;
+
+    public static final byte FULL = 0;
+    public static final byte DELTA = 1;
+
+    public static final int HEADER_SIZE = 4 + 2 + 1 + 1 + 8;
+    public static final int FULL_RECORD_SIZE = 24;
+    public static final int DELTA_RECORD_SIZE = 8;
+
+    public static final int NO_REGISTER = 0xFF;
+    public static final char CONTINUATION = 0xFFFF; // never a PC
+
+    // mapped at once, a multiple of both record sizes
+    static final int CHUNK_SIZE = 24 * 8 * 65536;
+
+    private final FileChannel channel;
+    @Getter
+    private final boolean delta;
+    private final int recordSize;
+
+    private MappedByteBuffer buffer;
+    private long chunkStart = HEADER_SIZE;
+    @Getter
+    private long records = 0;
+
+    public TraceWriter(File file, boolean delta) throws IOException {
+        this.delta = delta;
+        recordSize = delta ? DELTA_RECORD_SIZE : FULL_RECORD_SIZE;
+
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, chunkStart, CHUNK_SIZE);
+    }
+
+    /***
+     * Records the instruction just executed at the given PC, which left
+     * the registers in memory, before holding V as it was before it.
+     */
+    public void record(int PC, char opcode, Memory memory, byte[] before) {
+        byte[] V = memory.V;
+        int changed = 0;
+        for (int i = 0; i < V.length; ++i) {
+            if (V[i] != before[i])
+                changed |= 1 << i;
+        }
+
+        if (!delta) {
+            ensureSpace();
+            buffer.putChar((char) PC);
+            buffer.putChar(opcode);
+            buffer.putChar(memory.I);
+            buffer.putChar((char) changed);
+            buffer.put(V);
+            ++records;
+            return;
+        }
+
+        int register = changed == 0 ? NO_REGISTER : Integer.numberOfTrailingZeros(changed);
+        putDelta((char) PC, opcode, memory.I, register, register == NO_REGISTER ? 0 : V[register]);
+
+        changed &= changed - 1;
+        while (changed != 0) {
+            register = Integer.numberOfTrailingZeros(changed);
+            changed &= changed - 1;
+            putDelta(CONTINUATION, (char) 0, (char) 0, register, V[register]);
+        }
+    }
+
+    private void putDelta(char PC, char opcode, char I, int register, byte value) {
+        ensureSpace();
+        buffer.putChar(PC);
+        buffer.putChar(opcode);
+        buffer.putChar(I);
+        buffer.put((byte) register);
+        buffer.put(value);
+        ++records;
+    }
+
+    private void ensureSpace() {
+        if (buffer.remaining() >= recordSize)
+            return;
+
+        try {
+            chunkStart += CHUNK_SIZE;
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, chunkStart, CHUNK_SIZE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't extend the trace: " + e.getMessage(), e);
+        }
+    }
+
+    /***
+     * Writes the header and cuts the file after the last record, if the
+     * platform allows it while mapped.
+     */
+    @Override
+    public void close() throws IOException {
+        long size = chunkStart + buffer.position();
+        buffer = null; // unmapped once collected
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        header.put(delta ? DELTA : FULL);
+        header.put((byte) recordSize);
+        header.putLong(records);
+        header.flip();
+
+        try {
+            while (header.hasRemaining())
+                channel.write(header, header.position());
+            try {
+                channel.truncate(size);
+            } catch (IOException e) {
+                // the last chunk is still mapped, the padding stays
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package chip8;
+
+/*
+    Interpreter writing every instruction to a TraceWriter. CHIP8 runs the
+    CPU with it instead of its engine while tracing. Idle loops aren't
+    skipped, so the trace has every instruction the CPU executes.
+ */
+public class TracingEngine implements Engine {
+
+    private final TraceWriter writer;
+
+    private final byte[] before = new byte[16];
+
+    public TracingEngine(TraceWriter writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public int run(CPU cpu, int cycles) throws IllegalStateException {
+        Memory memory = cpu.getMemory();
+
+        for (int i = 0; i < cycles; ++i) {
+            int address = memory.PC;
+            Instruction instruction = cpu.fetchInstruction();
+            System.arraycopy(memory.V, 0, before, 0, before.length);
+
+            instruction.execute(cpu);
+            cpu.skipIdleLoop(0);
+
+            writer.record(address, instruction.opcode, memory, before);
+        }
+
+        return cycles;
+    }
+}
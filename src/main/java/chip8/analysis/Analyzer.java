@@ -0,0 +1,275 @@
+package chip8.analysis;
+
+import chip8.CPU;
+import chip8.Instruction;
+import chip8.Memory;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Static analysis of a ROM without running it. Instructions are decoded
+    with CPU.decode(), like the CPU does, and followed from the start of the
+    program through jumps (1NNN), calls (2NNN, continuing after them as after
+    a return) and skips (both ways), which gives the reachable code, its basic
+    blocks and the invalid opcodes the CPU would stop at.
+
+    Targets of BNNN depend on V0 and aren't followed, neither is code
+    outside of the ROM. Bytes which aren't code and are pointed at by an ANNN
+    are data, up to 16 of them (the largest FX65 or sprite) or the next code.
+ */
+public class Analyzer {
+
+    // bytes after an ANNN target taken as data
+    public static final int DATA_LENGTH = 16;
+
+    private Analyzer() {
+    }
+
+    public static RomAnalysis analyze(byte[] program) {
+        if (program.length > Memory.MAX_PROGRAM_SIZE)
+            throw new IllegalArgumentException("Program too large: " + program.length + " bytes");
+
+        int start = Memory.PROGRAM_START;
+        int end = start + program.length;
+
+        Instruction[] instructions = new Instruction[Memory.RAM_SIZE];
+        boolean[] leaders = new boolean[Memory.RAM_SIZE];
+        boolean[] dataTargets = new boolean[Memory.RAM_SIZE];
+
+        IntList invalidOpcodes = new IntList();
+        IntList indirectJumps = new IntList();
+        IntList externalTargets = new IntList();
+
+        int[] successors = new int[2];
+        IntList work = new IntList();
+        if (program.length >= 2)
+            work.add(start);
+        else
+            externalTargets.add(start);
+        leaders[start] = true;
+
+        while (work.size() > 0) {
+            int address = work.removeLast();
+            if (instructions[address] != null)
+                continue;
+
+            char opcode = (char) (((program[address - start] & 0xFF) << 8) | (program[address + 1 - start] & 0xFF));
+            Instruction instruction = CPU.decode(opcode);
+            instructions[address] = instruction;
+
+            if (!instruction.isValid())
+                invalidOpcodes.add(address);
+            else if ((opcode & 0xF000) == 0xB000)
+                indirectJumps.add(address);
+            else if ((opcode & 0xF000) == 0xA000)
+                dataTargets[instruction.NNN] = true;
+
+            int count = successors(address, instruction, successors);
+            boolean branches = count != 1 || successors[0] != address + 2;
+            for (int i = 0; i < count; ++i) {
+                int successor = successors[i];
+                if (successor < start || successor + 1 >= end) {
+                    externalTargets.addIfAbsent(successor);
+                    continue;
+                }
+
+                if (branches)
+                    leaders[successor] = true;
+                work.add(successor);
+            }
+        }
+
+        List<BasicBlock> blocks = findBlocks(instructions, leaders, start, end, successors);
+
+        Region[] regions = new Region[program.length];
+        Arrays.fill(regions, Region.UNREACHABLE);
+        for (int address = start; address < end; ++address) {
+            if (instructions[address] != null) {
+                regions[address - start] = Region.CODE;
+                if (address + 1 < end)
+                    regions[address + 1 - start] = Region.CODE;
+            }
+        }
+        for (int target = start; target < end; ++target) {
+            if (!dataTargets[target])
+                continue;
+
+            for (int address = target; address < Math.min(target + DATA_LENGTH, end); ++address) {
+                if (regions[address - start] == Region.CODE)
+                    break;
+                regions[address - start] = Region.DATA;
+            }
+        }
+
+        invalidOpcodes.sort();
+        indirectJumps.sort();
+        externalTargets.sort();
+
+        return new RomAnalysis(program.length, instructions, regions, blocks,
+                invalidOpcodes.toArray(), indirectJumps.toArray(), externalTargets.toArray());
+    }
+
+    /***
+     * Where execution may go after the instruction at the address,
+     * written into successors. Returns how many there are.
+     */
+    static int successors(int address, Instruction instruction, int[] successors) {
+        if (!instruction.isValid())
+            return 0;
+
+        char opcode = instruction.opcode;
+        switch (opcode & 0xF000) {
+            case 0x0000:
+                if (opcode == 0x00EE)
+                    return 0;
+                break;
+            case 0x1000:
+                successors[0] = instruction.NNN;
+                return 1;
+            case 0x2000:
+                successors[0] = instruction.NNN;
+                successors[1] = address + 2;
+                return 2;
+            case 0x3000:
+            case 0x4000:
+            case 0x5000:
+            case 0x9000:
+            case 0xE000:
+                successors[0] = address + 2;
+                successors[1] = address + 4;
+                return 2;
+            case 0xB000:
+                return 0;
+        }
+
+        successors[0] = address + 2;
+        return 1;
+    }
+
+    private static List<BasicBlock> findBlocks(Instruction[] instructions, boolean[] leaders,
+                                               int start, int end, int[] successors) {
+        List<BasicBlock> blocks = new ArrayList<>();
+        List<Instruction> body = new ArrayList<>();
+
+        for (int first = start; first < end; ++first) {
+            if (instructions[first] == null)
+                continue;
+            // starts a block unless it's reached by running on from the previous instruction
+            if (!leaders[first] && first - 2 >= start && instructions[first - 2] != null
+                    && continuesTo(first - 2, instructions[first - 2], successors))
+                continue;
+
+            body.clear();
+            int address = first;
+            while (true) {
+                body.add(instructions[address]);
+                int next = address + 2;
+                if (!continuesTo(address, instructions[address], successors)
+                        || next >= end || instructions[next] == null || leaders[next])
+                    break;
+                address = next;
+            }
+
+            int count = successors(address, instructions[address], successors);
+            IntList targets = new IntList();
+            for (int i = 0; i < count; ++i) {
+                int target = successors[i];
+                if (target >= start && target + 1 < end)
+                    targets.addIfAbsent(target);
+            }
+
+            blocks.add(new BasicBlock(first, body.toArray(new Instruction[0]), targets.toArray()));
+        }
+
+        return blocks;
+    }
+
+    // only to the next instruction
+    private static boolean continuesTo(int address, Instruction instruction, int[] successors) {
+        int count = successors(address, instruction, successors);
+        return count == 1 && successors[0] == address + 2;
+    }
+
+    /*
+        Growable int array, for the work list and the found addresses.
+     */
+    private static class IntList {
+
+        private int[] values = new int[16];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, 2 * size);
+            values[size++] = value;
+        }
+
+        void addIfAbsent(int value) {
+            for (int i = 0; i < size; ++i) {
+                if (values[i] == value)
+                    return;
+            }
+            add(value);
+        }
+
+        int removeLast() {
+            return values[--size];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void sort() {
+            Arrays.sort(values, 0, size);
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /***
+     * Prints the disassembly of the given ROM and a summary of the analysis.
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: Analyzer <rom>");
+            System.exit(1);
+        }
+
+        byte[] program;
+        try {
+            program = FileUtils.readFileToByteArray(new File(args[0]));
+            if (program.length > Memory.MAX_PROGRAM_SIZE)
+                throw new IOException("ROM too large: " + args[0] + " (" + program.length + " bytes)");
+        } catch (IOException e) {
+            System.err.println("Can't load ROM: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        long start = System.nanoTime();
+        RomAnalysis analysis = analyze(program);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.print(Disassembler.listing(program, analysis));
+        System.out.println();
+        System.out.println(analysis.countBytes(Region.CODE) + " bytes of code, "
+                + analysis.countBytes(Region.DATA) + " of data, "
+                + analysis.countBytes(Region.UNREACHABLE) + " unreachable, "
+                + analysis.getBlocks().size() + " blocks, analyzed in " + (elapsed / 1000) + " us");
+
+        for (int address : analysis.getInvalidOpcodes())
+            System.out.println(String.format("Invalid opcode at 0x%03X", address));
+        for (int address : analysis.getIndirectJumps())
+            System.out.println(String.format("Indirect jump at 0x%03X", address));
+        for (int address : analysis.getExternalTargets())
+            System.out.println(String.format("Runs outside of the ROM at 0x%03X", address));
+    }
+}
@@ -0,0 +1,33 @@
+package chip8.analysis;
+
+import chip8.Instruction;
+import lombok.Getter;
+
+/*
+    Straight-line run of reachable instructions: entered only at the first
+    one, left only after the last one, to the start of its successors.
+ */
+@Getter
+public class BasicBlock {
+
+    private final int start;
+    private final int end; // address after the last instruction
+    private final Instruction[] instructions;
+    private final int[] successors; // start addresses, in the ROM
+
+    BasicBlock(int start, Instruction[] instructions, int[] successors) {
+        this.start = start;
+        this.end = start + 2 * instructions.length;
+        this.instructions = instructions;
+        this.successors = successors;
+    }
+
+    public Instruction getLastInstruction() {
+        return instructions[instructions.length - 1];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("0x%03X..0x%03X", start, end - 2);
+    }
+}
@@ -0,0 +1,100 @@
+package chip8.analysis;
+
+import chip8.CPU;
+import chip8.Instruction;
+import chip8.Memory;
+
+/*
+    Instructions as assembly text, in the usual CHIP-8 mnemonics
+    (e.g. "DRW V0, V1, 5"). Numbers are hexadecimal.
+ */
+public class Disassembler {
+
+    private Disassembler() {
+    }
+
+    public static String disassemble(char opcode) {
+        return disassemble(CPU.decode(opcode));
+    }
+
+    public static String disassemble(Instruction instruction) {
+        String X = "V" + hex(instruction.X);
+        String Y = "V" + hex(instruction.Y);
+        String NN = String.format("0x%02X", instruction.NN);
+        String NNN = String.format("0x%03X", instruction.NNN);
+
+        switch (instruction.getFamilyName()) {
+            case "00E0": return "CLS";
+            case "00EE": return "RET";
+            case "0NNN": return "SYS " + NNN;
+            case "1NNN": return "JP " + NNN;
+            case "2NNN": return "CALL " + NNN;
+            case "3XNN": return "SE " + X + ", " + NN;
+            case "4XNN": return "SNE " + X + ", " + NN;
+            case "5XY0": return "SE " + X + ", " + Y;
+            case "6XNN": return "LD " + X + ", " + NN;
+            case "7XNN": return "ADD " + X + ", " + NN;
+            case "8XY0": return "LD " + X + ", " + Y;
+            case "8XY1": return "OR " + X + ", " + Y;
+            case "8XY2": return "AND " + X + ", " + Y;
+            case "8XY3": return "XOR " + X + ", " + Y;
+            case "8XY4": return "ADD " + X + ", " + Y;
+            case "8XY5": return "SUB " + X + ", " + Y;
+            case "8XY6": return "SHR " + X;
+            case "8XY7": return "SUBN " + X + ", " + Y;
+            case "8XYE": return "SHL " + X;
+            case "9XY0": return "SNE " + X + ", " + Y;
+            case "ANNN": return "LD I, " + NNN;
+            case "BNNN": return "JP V0, " + NNN;
+            case "CXNN": return "RND " + X + ", " + NN;
+            case "DXYN": return "DRW " + X + ", " + Y + ", " + hex(instruction.N);
+            case "EX9E": return "SKP " + X;
+            case "EXA1": return "SKNP " + X;
+            case "FX07": return "LD " + X + ", DT";
+            case "FX0A": return "LD " + X + ", K";
+            case "FX15": return "LD DT, " + X;
+            case "FX18": return "LD ST, " + X;
+            case "FX1E": return "ADD I, " + X;
+            case "FX29": return "LD F, " + X;
+            case "FX33": return "LD B, " + X;
+            case "FX55": return "LD [I], " + X;
+            case "FX65": return "LD " + X + ", [I]";
+            default: return String.format("DW 0x%04X ; invalid", (int) instruction.opcode);
+        }
+    }
+
+    /***
+     * The ROM as code, data bytes and unreachable bytes, one per line:
+     * address, bytes, text. Basic blocks are separated by empty lines.
+     */
+    public static String listing(byte[] program, RomAnalysis analysis) {
+        StringBuilder result = new StringBuilder();
+
+        int address = Memory.PROGRAM_START;
+        Region previous = null;
+        while (address < analysis.getEnd()) {
+            Region region = analysis.getRegion(address);
+            if ((region != previous || analysis.getBlockAt(address) != null) && previous != null)
+                result.append('\n');
+            previous = region;
+
+            if (analysis.isCode(address)) {
+                Instruction instruction = analysis.getInstruction(address);
+                result.append(String.format("%03X  %04X  %s%n", address, (int) instruction.opcode,
+                        disassemble(instruction)));
+                address += 2;
+            } else {
+                int value = program[address - Memory.PROGRAM_START] & 0xFF;
+                result.append(String.format("%03X  %02X    DB 0x%02X%s%n", address, value, value,
+                        region == Region.DATA ? "" : " ; unreachable"));
+                address += 1;
+            }
+        }
+
+        return result.toString();
+    }
+
+    private static String hex(int value) {
+        return Integer.toHexString(value).toUpperCase();
+    }
+}
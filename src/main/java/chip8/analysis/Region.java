@@ -0,0 +1,16 @@
+package chip8.analysis;
+
+/*
+    What a byte of a ROM is found to be by the Analyzer.
+ */
+public enum Region {
+
+    // part of an instruction reachable from the start of the program
+    CODE,
+
+    // not code, pointed at by an ANNN, e.g. a sprite
+    DATA,
+
+    // neither
+    UNREACHABLE
+}
@@ -0,0 +1,111 @@
+package chip8.analysis;
+
+import chip8.Instruction;
+import chip8.Memory;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+/*
+    What the Analyzer found in a ROM. Addresses are RAM addresses, the ROM
+    being loaded at Memory.PROGRAM_START.
+ */
+public class RomAnalysis {
+
+    @Getter
+    private final int programSize;
+
+    private final Instruction[] instructions; // at every reachable address, else null
+    private final Region[] regions; // of every byte of the ROM
+
+    private final List<BasicBlock> blocks;
+    private final BasicBlock[] blockAt;
+
+    private final int[] invalidOpcodes;
+    private final int[] indirectJumps;
+    private final int[] externalTargets;
+
+    RomAnalysis(int programSize, Instruction[] instructions, Region[] regions, List<BasicBlock> blocks,
+                int[] invalidOpcodes, int[] indirectJumps, int[] externalTargets) {
+        this.programSize = programSize;
+        this.instructions = instructions;
+        this.regions = regions;
+        this.blocks = Collections.unmodifiableList(blocks);
+        this.invalidOpcodes = invalidOpcodes;
+        this.indirectJumps = indirectJumps;
+        this.externalTargets = externalTargets;
+
+        blockAt = new BasicBlock[Memory.RAM_SIZE];
+        for (BasicBlock block : blocks)
+            blockAt[block.getStart()] = block;
+    }
+
+    public int getEnd() {
+        return Memory.PROGRAM_START + programSize;
+    }
+
+    /***
+     * The decoded instruction at the address, null if it isn't reachable.
+     */
+    public Instruction getInstruction(int address) {
+        return instructions[address];
+    }
+
+    public boolean isCode(int address) {
+        return instructions[address] != null;
+    }
+
+    public Region getRegion(int address) {
+        if (address < Memory.PROGRAM_START || address >= getEnd())
+            throw new IllegalArgumentException(String.format("Not in the ROM: 0x%X", address));
+
+        return regions[address - Memory.PROGRAM_START];
+    }
+
+    /***
+     * Basic blocks by start address.
+     */
+    public List<BasicBlock> getBlocks() {
+        return blocks;
+    }
+
+    /***
+     * The block starting at the address, null if none does.
+     */
+    public BasicBlock getBlockAt(int address) {
+        return blockAt[address];
+    }
+
+    /***
+     * Addresses of reachable opcodes which throw an IllegalStateException when executed.
+     */
+    public int[] getInvalidOpcodes() {
+        return invalidOpcodes.clone();
+    }
+
+    /***
+     * Addresses of reachable BNNN, whose targets depend on V0 and aren't followed.
+     */
+    public int[] getIndirectJumps() {
+        return indirectJumps.clone();
+    }
+
+    /***
+     * Addresses outside of the ROM reachable code continues at,
+     * e.g. running past its end, which aren't followed.
+     */
+    public int[] getExternalTargets() {
+        return externalTargets.clone();
+    }
+
+    public int countBytes(Region region) {
+        int result = 0;
+        for (Region r : regions) {
+            if (r == region)
+                ++result;
+        }
+
+        return result;
+    }
+}
@@ -4,18 +4,19 @@ import chip8.*;
 import chip8.app.debug.RegistersInfoApp;
 import chip8.app.keyboard.KeyboardApp;
 import chip8.app.screen.ScreenApp;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
-import javafx.util.Duration;
 
+import javax.management.JMException;
 import java.io.File;
 import java.io.IOException;
+import java.util.Random;
 
 
 public class CHIP8App extends Application {
@@ -30,19 +31,21 @@ public class CHIP8App extends Application {
     private Scene scene;
     private VBox layout;
     private MenuBar menuBar;
+    private Stage stage;
 
 
-    private Timeline cpuTimeline;
-    private Timeline timersTimeline;
+    private EmulationLoop emulationLoop;
+    private AnimationTimer renderTimer;
 
 
-    private boolean emulatorRunning = false;
+    private static final String TITLE = "CHIP-8 interpreter";
 
     private static final int SCREEN_WIDTH = 800;
     private static final int SCREEN_HEIGHT = 400;
 
-    private static final int CPU_RATE = 420;
-    private static final int TIMERS_RATE = 60;
+    private static final int[] INSTRUCTIONS_PER_FRAME = {7, 15, 30, 100, 1000};
+
+    private static final int REWIND_SECONDS = 10;
 
     private MenuBar createMenuBar() {
 
@@ -54,13 +57,15 @@ public class CHIP8App extends Application {
         itemOpenRom.setOnAction(actionEvent ->{
             FileChooser fileChooser = new FileChooser();
             File file = fileChooser.showOpenDialog(null);
-            if (file != null) {
-                chip8.loadProgram(file);
-                registersInfoApp.refresh();
-                Screen screen = chip8.getCpu().getScreen();
-                screen.clear();
-                screenApp.render();
-            }
+            if (file != null)
+                emulationLoop.execute(() -> {
+                    try {
+                        chip8.loadProgram(file);
+                    }
+                    catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
         });
         menuFile.getItems().add(itemOpenRom);
 
@@ -69,12 +74,14 @@ public class CHIP8App extends Application {
             FileChooser fileChooser = new FileChooser();
             File file = fileChooser.showSaveDialog(null);
             if (file != null) {
-                try {
-                    chip8.saveState(file);
-                }
-                catch (IOException e) {
-                    e.printStackTrace();
-                }
+                emulationLoop.execute(() -> {
+                    try {
+                        chip8.saveState(file);
+                    }
+                    catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
             }
         });
         menuFile.getItems().add(itemSave);
@@ -84,30 +91,96 @@ public class CHIP8App extends Application {
             FileChooser fileChooser = new FileChooser();
             File file = fileChooser.showOpenDialog(null);
             if (file != null) {
-                try {
-                    chip8.loadState(file);
-                }
-                catch (IOException e) {
-                    e.printStackTrace();
-                }
-                screenApp.render();
-                registersInfoApp.refresh();
+                emulationLoop.execute(() -> {
+                    try {
+                        chip8.loadState(file);
+                    }
+                    catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
             }
         });
         menuFile.getItems().add(itemLoad);
 
+        MenuItem itemExportJson = new MenuItem("Export JSON...");
+        itemExportJson.setOnAction(actionEvent ->{
+            FileChooser fileChooser = new FileChooser();
+            File file = fileChooser.showSaveDialog(null);
+            if (file != null) {
+                emulationLoop.execute(() -> {
+                    try {
+                        chip8.exportJson(file);
+                    }
+                    catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
+            }
+        });
+        menuFile.getItems().add(itemExportJson);
+
         menuBar.getMenus().add(menuFile);
 
 
         Menu menuEmulation = new Menu("Emulation");
 
         MenuItem itemRun = new MenuItem("Run");
-        itemRun.setOnAction(e -> emulatorRunning = true);
+        itemRun.setOnAction(e -> {
+            stage.setTitle(TITLE);
+            emulationLoop.setRunning(true);
+        });
         MenuItem itemPause = new MenuItem("Pause");
-        itemPause.setOnAction(e -> emulatorRunning = false);
+        itemPause.setOnAction(e -> emulationLoop.setRunning(false));
+
+        MenuItem itemRewind = new MenuItem("Rewind 1 s");
+        itemRewind.setOnAction(e -> emulationLoop.execute(() -> {
+            try {
+                chip8.rewind(CHIP8.TIMERS_RATE);
+            }
+            catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }));
+
+        MenuItem itemRecord = new MenuItem("Record input");
+        itemRecord.setOnAction(e -> emulationLoop.execute(() ->
+                chip8.startRecording(new Random().nextLong(), emulationLoop.getInstructionsPerFrame())));
+
+        MenuItem itemStopRecording = new MenuItem("Stop recording...");
+        itemStopRecording.setOnAction(actionEvent ->{
+            FileChooser fileChooser = new FileChooser();
+            File file = fileChooser.showSaveDialog(null);
+            emulationLoop.execute(() -> {
+                InputRecording recording = chip8.stopRecording();
+                if (recording == null || file == null)
+                    return;
+
+                try {
+                    recording.save(file);
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        });
 
         menuEmulation.getItems().add(itemRun);
         menuEmulation.getItems().add(itemPause);
+        menuEmulation.getItems().add(itemRewind);
+        menuEmulation.getItems().add(itemRecord);
+        menuEmulation.getItems().add(itemStopRecording);
+
+        Menu menuSpeed = new Menu("Instructions per frame");
+        ToggleGroup speedGroup = new ToggleGroup();
+        for (int instructionsPerFrame : INSTRUCTIONS_PER_FRAME) {
+            RadioMenuItem itemSpeed = new RadioMenuItem(Integer.toString(instructionsPerFrame));
+            itemSpeed.setToggleGroup(speedGroup);
+            itemSpeed.setSelected(instructionsPerFrame == emulationLoop.getInstructionsPerFrame());
+            itemSpeed.setOnAction(e -> emulationLoop.setInstructionsPerFrame(instructionsPerFrame));
+            menuSpeed.getItems().add(itemSpeed);
+        }
+        menuEmulation.getItems().add(menuSpeed);
 
         menuBar.getMenus().add(menuEmulation);
 
@@ -117,6 +190,10 @@ public class CHIP8App extends Application {
 
         itemRegistersInfo.setOnAction(e -> registersInfoApp.show());
         menuDebug.getItems().add(itemRegistersInfo);
+
+        CheckMenuItem itemProfiling = new CheckMenuItem("Count instructions (JMX)");
+        itemProfiling.setOnAction(e -> chip8.getStats().setEnabled(itemProfiling.isSelected()));
+        menuDebug.getItems().add(itemProfiling);
         menuBar.getMenus().add(menuDebug);
 
 
@@ -126,10 +203,20 @@ public class CHIP8App extends Application {
     @Override
     public void start(Stage primaryStage) throws Exception {
 
-        primaryStage.setTitle("CHIP-8 interpreter");
+        stage = primaryStage;
+        primaryStage.setTitle(TITLE);
 
         /* basic initialization */
         chip8 = new CHIP8();
+        chip8.setRewindBuffer(new RewindBuffer(REWIND_SECONDS * CHIP8.TIMERS_RATE, CHIP8.TIMERS_RATE));
+        emulationLoop = new EmulationLoop(chip8);
+
+        try {
+            chip8.getStats().register("CHIP8App", emulationLoop);
+        }
+        catch (JMException e) {
+            e.printStackTrace();
+        }
 
         layout = new VBox();
 
@@ -148,7 +235,9 @@ public class CHIP8App extends Application {
 
         /* create registersInfoApp*/
         registersInfoApp = new RegistersInfoApp(chip8);
-        registersInfoApp.refresh();
+
+        /* show debugger hits, the emulation loop pauses on them */
+        chip8.getDebugger().addHitListener(hit -> Platform.runLater(() -> primaryStage.setTitle(TITLE + " - " + hit)));
 
         scene = new Scene(layout);
 
@@ -158,36 +247,23 @@ public class CHIP8App extends Application {
         scene.setOnKeyReleased(keyboardApp.getEventHandlerForKeyReleased());
 
 
-        /* config cpuTimeline */
-        cpuTimeline = new Timeline();
-        cpuTimeline.setCycleCount(Timeline.INDEFINITE);
-
-        KeyFrame cpuFrame = new KeyFrame(Duration.seconds(1.0 / CPU_RATE), e -> {
+        /* config renderTimer, called once per displayed frame */
+        FrameBuffer frameBuffer = emulationLoop.getFrameBuffer();
+        renderTimer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                long[] frame = frameBuffer.acquire();
+                if (frame != null)
+                    screenApp.render(frame);
 
-            if (emulatorRunning == true) {
-                chip8.cpuTick();
                 registersInfoApp.refresh();
-                screenApp.render();
             }
-        });
-        cpuTimeline.getKeyFrames().add(cpuFrame);
-        cpuTimeline.play();
-
-
-        /* config timersTimeline */
-        timersTimeline = new Timeline();
-        timersTimeline.setCycleCount(Timeline.INDEFINITE);
-
-        KeyFrame timersFrame = new KeyFrame(Duration.seconds(1.0 / TIMERS_RATE), e -> {
+        };
+        renderTimer.start();
 
-            if (emulatorRunning == true) {
-                chip8.timersTick();
-                registersInfoApp.refresh();
-            }
-        });
 
-        timersTimeline.getKeyFrames().add(timersFrame);
-        timersTimeline.play();
+        /* start emulation thread, paused */
+        emulationLoop.start();
 
 
         primaryStage.setScene(scene);
@@ -195,6 +271,11 @@ public class CHIP8App extends Application {
         primaryStage.show();
     }
 
+    @Override
+    public void stop() {
+        emulationLoop.stop();
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -1,15 +1,29 @@
 package chip8.app.debug;
 
-import lombok.Data;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+import lombok.Getter;
 
-@Data
 public class Register {
-        private String name;
-        private String value; // value is type String for easy writing as hex
+        @Getter
+        private final String name;
+        private final StringProperty value; // value is type String for easy writing as hex
 
         Register(String name, String value) {
             this.name = name;
-            this.value = value;
+            this.value = new SimpleStringProperty(value);
+        }
+
+        public String getValue() {
+            return value.get();
         }
-}
 
+        public void setValue(String value) {
+            this.value.set(value);
+        }
+
+        // observed by the table, so a row repaints when its value is set
+        public StringProperty valueProperty() {
+            return value;
+        }
+}
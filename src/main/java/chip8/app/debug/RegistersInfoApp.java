@@ -1,7 +1,6 @@
 package chip8.app.debug;
 
 import chip8.CHIP8;
-import chip8.CPU;
 import chip8.Memory;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -12,14 +11,42 @@ import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.StackPane;
 import javafx.stage.Stage;
 
+import java.util.Arrays;
+
+/*
+    Table of the registers. The rows are made once, refresh() only sets
+    the values which changed since the previous refresh and does nothing
+    while the window isn't showing.
+ */
 public class RegistersInfoApp extends Stage {
 
+    private static final String[] HEX = new String[0x100];
+
+    static {
+        for (int value = 0; value < HEX.length; ++value)
+            HEX[value] = "0x" + Integer.toHexString(value).toUpperCase();
+    }
+
+    private static final int RAM_AT_PC = 0;
+    private static final int RAM_AT_PC_PLUS_1 = 1;
+    private static final int PC = 2;
+    private static final int I = 3;
+    private static final int V = 4;
+    private static final int SP = V + 16;
+    private static final int SOUND_TIMER = SP + 1;
+    private static final int DELAY_TIMER = SP + 2;
+    private static final int NUMBER_OF_ROWS = DELAY_TIMER + 1;
+
     private CHIP8 chip8;
 
     private TableView<Register> table;
     private StackPane layout;
     private Scene scene;
 
+    private final ObservableList<Register> registers = FXCollections.observableArrayList();
+    private final int[] shownValues = new int[NUMBER_OF_ROWS];
+    private final int[] values = new int[NUMBER_OF_ROWS];
+
     public RegistersInfoApp(CHIP8 chip8) {
         this.chip8 = chip8;
 
@@ -34,7 +61,8 @@ public class RegistersInfoApp extends Stage {
 
         table = new TableView<>();
 
-        refresh();
+        createRegisters();
+        table.setItems(registers);
         table.getColumns().addAll(nameColumn, valueColumn);
 
         layout = new StackPane();
@@ -43,60 +71,57 @@ public class RegistersInfoApp extends Stage {
         scene = new Scene(layout);
         this.setTitle("Debug Informations");
         this.setScene(scene);
-    }
-
-    public void refresh(){
-        Memory memory = chip8.getCpu().getMemory();
-
-        ObservableList<Register> registers = FXCollections.observableArrayList();
-        String valueOfRegisterAsHexString;
-        Register newRegister;
 
-        // RAM[PC]
-        valueOfRegisterAsHexString = "0x" + Integer.toHexString(memory.RAM[memory.PC] & 0xFF).toUpperCase();
-        newRegister = new Register("RAM[PC]", valueOfRegisterAsHexString);
-        registers.add(newRegister);
-
-        // RAM[PC + 1]
-        valueOfRegisterAsHexString = "0x" + Integer.toHexString(memory.RAM[memory.PC + 1] & 0xFF).toUpperCase();
-        newRegister = new Register("RAM[PC + 1]", valueOfRegisterAsHexString);
-        registers.add(newRegister);
+        this.setOnShown(e -> refresh());
+    }
 
-        // PC
-        valueOfRegisterAsHexString = "0x" + Integer.toHexString(memory.PC & 0xFFFF).toUpperCase();
-        newRegister = new Register("PC", valueOfRegisterAsHexString);
-        registers.add(newRegister);
+    private void createRegisters() {
+        String[] names = new String[NUMBER_OF_ROWS];
+        names[RAM_AT_PC] = "RAM[PC]";
+        names[RAM_AT_PC_PLUS_1] = "RAM[PC + 1]";
+        names[PC] = "PC";
+        names[I] = "I";
+        for (int i = 0; i <= 0xF; ++i)
+            names[V + i] = "V" + Integer.toHexString(i).toUpperCase();
+        names[SP] = "SP";
+        names[SOUND_TIMER] = "soundTimer";
+        names[DELAY_TIMER] = "delayTimer";
+
+        for (String name : names)
+            registers.add(new Register(name, ""));
+
+        Arrays.fill(shownValues, -1);
+    }
 
-        // I
-        valueOfRegisterAsHexString = "0x" + Integer.toHexString(memory.I & 0xFFFF).toUpperCase();
-        newRegister = new Register("I", valueOfRegisterAsHexString);
-        registers.add(newRegister);
+    private static String hex(int value) {
+        return value < HEX.length ? HEX[value] : "0x" + Integer.toHexString(value).toUpperCase();
+    }
 
+    /***
+     * Shows the current values, if the window is showing.
+     * Meant to be called once per displayed frame.
+     */
+    public void refresh(){
+        if (!isShowing())
+            return;
 
-        // V
-        for (int i = 0; i <= 0xF; ++i) {
-            String iAsHexString = Integer.toHexString(i).toUpperCase();
-            valueOfRegisterAsHexString = "0x" + Integer.toHexString(memory.V[i] & 0xFF).toUpperCase();
+        Memory memory = chip8.getCpu().getMemory();
 
-            newRegister = new Register("V" + iAsHexString, valueOfRegisterAsHexString);
-            registers.add(newRegister);
+        values[RAM_AT_PC] = memory.RAM[memory.PC & 0xFFF] & 0xFF;
+        values[RAM_AT_PC_PLUS_1] = memory.RAM[(memory.PC + 1) & 0xFFF] & 0xFF;
+        values[PC] = memory.PC & 0xFFFF;
+        values[I] = memory.I & 0xFFFF;
+        for (int i = 0; i <= 0xF; ++i)
+            values[V + i] = memory.V[i] & 0xFF;
+        values[SP] = memory.SP & 0xFF;
+        values[SOUND_TIMER] = memory.soundTimer & 0xFF;
+        values[DELAY_TIMER] = memory.delayTimer & 0xFF;
+
+        for (int row = 0; row < NUMBER_OF_ROWS; ++row) {
+            if (values[row] != shownValues[row]) {
+                shownValues[row] = values[row];
+                registers.get(row).setValue(hex(values[row]));
+            }
         }
-
-        // SP
-        valueOfRegisterAsHexString = "0x" + Integer.toHexString(memory.SP & 0xFF).toUpperCase();
-        newRegister = new Register("SP", valueOfRegisterAsHexString);
-        registers.add(newRegister);
-
-        // soundTimer
-        valueOfRegisterAsHexString = "0x" + Integer.toHexString(memory.soundTimer & 0xFF).toUpperCase();
-        newRegister = new Register("soundTimer", valueOfRegisterAsHexString);
-        registers.add(newRegister);
-
-        // delayTimer
-        valueOfRegisterAsHexString = "0x" + Integer.toHexString(memory.delayTimer & 0xFF).toUpperCase();
-        newRegister = new Register("delayTimer", valueOfRegisterAsHexString);
-        registers.add(newRegister);
-
-        table.setItems(registers);
     }
 }
@@ -29,7 +29,7 @@ public class KeyboardApp {
             Keyboard keyboard = chip8.getCpu().getKeyboard();
 
             if (index != -1)
-                keyboard.setKeyUp(index);
+                keyboard.queueKeyUp(index, System.nanoTime());
         };
     }
 
@@ -39,7 +39,7 @@ public class KeyboardApp {
             Keyboard keyboard = chip8.getCpu().getKeyboard();
 
             if (index != -1)
-                keyboard.setKeyDown(index);
+                keyboard.queueKeyDown(index, System.nanoTime());
         };
     }
 }
@@ -2,50 +2,137 @@ package chip8.app.screen;
 
 import chip8.CHIP8;
 import chip8.Screen;
-import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
 import lombok.Getter;
 
-public class ScreenApp extends Canvas {
+/*
+    Shows the CHIP8 screen as a 64x32 image, one pixel per CHIP8 pixel:
+    the changed rows are written into an ARGB int[] and copied into a
+    WritableImage, which the view scales to its size without smoothing
+    (nearest neighbour). Colours come from a palette indexed by the pixel bit.
 
-    private final CHIP8 chip8;
-
-    private final double scaleHeight;
-    private final double scaleWidth;
+    An ImageView rather than a Canvas because GraphicsContext can't turn
+    image smoothing off before JavaFX 12.
+ */
+public class ScreenApp extends ImageView {
 
-    private final GraphicsContext gc;
+    private final CHIP8 chip8;
 
     @Getter
     private final Color colorOfGlowingPixel = Color.BLACK;
     @Getter
     private final Color colorOfNotGlowingPixel = Color.YELLOW;
 
+    // ARGB of a pixel which is off (0) and on (1)
+    private final int[] palette = {argb(colorOfNotGlowingPixel), argb(colorOfGlowingPixel)};
+
+    private final int[] pixels = new int[Screen.WIDTH * Screen.HEIGHT];
+    private final WritableImage image = new WritableImage(Screen.WIDTH, Screen.HEIGHT); // shown, see getImage()
+    private final PixelWriter pixelWriter = image.getPixelWriter();
+
+    // what the image currently shows
+    private boolean painted = false;
+    private Screen renderedScreen;
+    private final long[] renderedRows = new long[Screen.HEIGHT];
+
     public ScreenApp(CHIP8 chip8, double width, double height){
-        super(width, height);
+        setImage(image);
+        setFitWidth(width);
+        setFitHeight(height);
+        setSmooth(false);
 
         this.chip8 = chip8;
-        Screen screen = chip8.getCpu().getScreen();
-
-        scaleWidth = getWidth() / screen.WIDTH;
-        scaleHeight = getHeight() / screen.HEIGHT;
+    }
 
-        gc = this.getGraphicsContext2D();
+    private static int argb(Color color) {
+        return (int) Math.round(color.getOpacity() * 255) << 24
+                | (int) Math.round(color.getRed() * 255) << 16
+                | (int) Math.round(color.getGreen() * 255) << 8
+                | (int) Math.round(color.getBlue() * 255);
     }
 
+    /***
+     * Repaints the pixels of the CHIP8 screen changed since the previous call.
+     * Has to be called from the FX application thread, while the CHIP8 doesn't run.
+     */
     public void render() {
         Screen screen = chip8.getCpu().getScreen();
-        for(int x = 0; x < screen.WIDTH; ++x) {
-            for(int y = 0; y < screen.HEIGHT; ++y) {
-                if (screen.getPixel(x, y) == true)
-                    gc.setFill(colorOfGlowingPixel);
-                else
-                    gc.setFill(colorOfNotGlowingPixel);
-
-                    gc.fillRect(x * scaleWidth, y * scaleHeight, scaleWidth, scaleHeight);
+
+        if (screen != renderedScreen || !painted) { // first frame or state loaded
+            renderedScreen = screen;
+            screen.takeDirtyRows();
+            screen.copyRows(renderedRows);
+            repaintAll();
+            return;
+        }
+
+        int dirtyRows = screen.takeDirtyRows();
+        int changed = 0;
+        while (dirtyRows != 0) {
+            int y = Integer.numberOfTrailingZeros(dirtyRows);
+            dirtyRows &= dirtyRows - 1;
+
+            if (screen.getRow(y) != renderedRows[y]) {
+                renderRow(y, screen.getRow(y));
+                changed |= 1 << y;
             }
         }
+
+        draw(changed);
     }
 
+    /***
+     * Repaints the pixels which differ in the given frame,
+     * e.g. one taken from a FrameBuffer. Has to be called from the
+     * FX application thread.
+     */
+    public void render(long[] rows) {
+        if (!painted) {
+            System.arraycopy(rows, 0, renderedRows, 0, Screen.HEIGHT);
+            repaintAll();
+            return;
+        }
 
+        int changed = 0;
+        for (int y = 0; y < Screen.HEIGHT; ++y) {
+            if (rows[y] != renderedRows[y]) {
+                renderRow(y, rows[y]);
+                changed |= 1 << y;
+            }
+        }
+
+        draw(changed);
+    }
+
+    private void renderRow(int y, long row) {
+        renderedRows[y] = row;
+
+        int first = y * Screen.WIDTH;
+        for (int x = 0; x < Screen.WIDTH; ++x)
+            pixels[first + x] = palette[(int) (row >>> (Screen.WIDTH - 1 - x)) & 1];
+    }
+
+    private void repaintAll() {
+        for (int y = 0; y < Screen.HEIGHT; ++y)
+            renderRow(y, renderedRows[y]);
+
+        draw(-1);
+        painted = true;
+    }
+
+    // copies the changed rows into the image, the view shows it scaled
+    private void draw(int changedRows) {
+        if (changedRows == 0)
+            return;
+
+        int top = Integer.numberOfTrailingZeros(changedRows);
+        int bottom = Screen.HEIGHT - Integer.numberOfLeadingZeros(changedRows);
+
+        pixelWriter.setPixels(0, top, Screen.WIDTH, bottom - top, PixelFormat.getIntArgbInstance(),
+                pixels, top * Screen.WIDTH, Screen.WIDTH);
+    }
 }
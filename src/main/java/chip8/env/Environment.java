@@ -0,0 +1,133 @@
+package chip8.env;
+
+import chip8.CHIP8;
+import chip8.Keyboard;
+import chip8.Memory;
+import chip8.Rng;
+import chip8.RomImage;
+import chip8.Screen;
+import lombok.Getter;
+
+/*
+    Reinforcement learning style environment: one CHIP8 running a ROM,
+    reset() starts an episode with a seeded RNG, step() holds the given
+    keys for some frames and gives the screen, a reward and whether
+    the episode is over. Nothing is allocated per step.
+
+    The observation is the screen as 32 rows of 64 pixels, one long per
+    row, pixel x in bit 63 - x. A CPU fault (invalid opcode, out of RAM
+    or of the stack) ends the episode, getError() tells which.
+
+    The program is loaded from its RomImage, shared with the other
+    environments of the ROM: a reset copies only the RAM pages written
+    during the episode. Every environment still has a whole RAM of its
+    own. close() releases the image.
+ */
+public class Environment implements AutoCloseable {
+
+    public static final int OBSERVATION_LONGS = Screen.HEIGHT;
+
+    @Getter
+    private final CHIP8 chip8 = new CHIP8();
+    private final RomImage image;
+    private boolean closed = false;
+    private boolean started = false; // reset() was called
+    @Getter
+    private final int cyclesPerFrame;
+    private final RewardFunction rewardFunction;
+    private final Rng rng = new Rng(0);
+
+    @Getter
+    private final long[] observation = new long[OBSERVATION_LONGS];
+    @Getter
+    private double reward;
+    @Getter
+    private boolean done;
+    @Getter
+    private long frames; // since the reset
+    @Getter
+    private String error; // the fault which ended the episode, null if none
+
+    public Environment(byte[] program, int cyclesPerFrame, RewardFunction rewardFunction) {
+        if (program.length > Memory.MAX_PROGRAM_SIZE)
+            throw new IllegalArgumentException("Program too large: " + program.length + " bytes");
+        if (cyclesPerFrame <= 0)
+            throw new IllegalArgumentException("cyclesPerFrame: " + cyclesPerFrame);
+
+        this.cyclesPerFrame = cyclesPerFrame;
+        this.rewardFunction = rewardFunction;
+
+        chip8.getCpu().setRNG(rng);
+        image = RomImage.acquire(program);
+    }
+
+    public Environment(byte[] program, RewardFunction rewardFunction) {
+        this(program, CHIP8.DEFAULT_CYCLES_PER_FRAME, rewardFunction);
+    }
+
+    /***
+     * Starts a new episode: the program is loaded again, with no key
+     * pressed and the RNG seeded.
+     */
+    public void reset(long seed) {
+        rng.setState(seed);
+        chip8.load(image);
+        chip8.getCpu().getKeyboard().setMask(0);
+
+        reward = 0;
+        done = false;
+        frames = 0;
+        error = null;
+        started = true;
+        rewardFunction.reset(chip8);
+        chip8.getCpu().getScreen().copyRows(observation);
+    }
+
+    /***
+     * Runs the given number of frames with the keys of the mask pressed
+     * (bit k for key k). Returns whether the episode is over, the
+     * observation and the reward are then those of this step.
+     * Once done, steps do nothing until reset.
+     */
+    public boolean step(int keyMask, int frames) {
+        if (!started)
+            throw new IllegalStateException("reset() not called");
+
+        if (done) {
+            reward = 0;
+            return true;
+        }
+
+        Keyboard keyboard = chip8.getCpu().getKeyboard();
+        keyboard.setMask(keyMask);
+
+        try {
+            for (int i = 0; i < frames; ++i) {
+                chip8.frame(cyclesPerFrame);
+                ++this.frames;
+            }
+
+            reward = rewardFunction.reward(chip8);
+            done = rewardFunction.isDone(chip8);
+        } catch (RuntimeException e) { // invalid opcode, or out of RAM or of the stack
+            reward = 0;
+            done = true;
+            error = e instanceof IllegalStateException ? e.getMessage() : e.toString();
+        }
+
+        chip8.getCpu().getScreen().copyRows(observation);
+        return done;
+    }
+
+    boolean isStarted() {
+        return started;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            image.release();
+        }
+    }
+}
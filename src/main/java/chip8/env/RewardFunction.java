@@ -0,0 +1,30 @@
+package chip8.env;
+
+import chip8.CHIP8;
+
+/*
+    Game specific part of an Environment, e.g. reading the score from RAM.
+    Called after every step, on the thread running the environment.
+ */
+public interface RewardFunction {
+
+    RewardFunction NONE = chip8 -> 0;
+
+    /***
+     * Reward for the step just taken.
+     */
+    double reward(CHIP8 chip8);
+
+    /***
+     * Whether the episode is over, e.g. no lives left.
+     */
+    default boolean isDone(CHIP8 chip8) {
+        return false;
+    }
+
+    /***
+     * Called by reset(), for rewards kept between steps.
+     */
+    default void reset(CHIP8 chip8) {
+    }
+}
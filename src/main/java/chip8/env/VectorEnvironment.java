@@ -0,0 +1,194 @@
+package chip8.env;
+
+import chip8.CHIP8;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+/*
+    Many Environments of one ROM stepped in lockstep on a fork-join pool,
+    every thread stepping its share of them. Results are written to one
+    direct (off-heap) buffer allocated up front, in native byte order:
+
+        long    observations[size][32], see Environment
+        double  rewards[size]
+        byte    done[size], 1 if the episode is over
+
+    The tasks are made once and reinitialized, a step allocates nothing.
+ */
+public class VectorEnvironment {
+
+    private final Environment[] environments;
+
+    @Getter
+    private final ByteBuffer buffer;
+    @Getter
+    private final LongBuffer observations;
+    @Getter
+    private final DoubleBuffer rewards;
+    private final int doneOffset;
+
+    private final ForkJoinPool pool;
+    private final Slice[] slices;
+    private final RecursiveAction all;
+
+    // arguments of the current step, read by the slices
+    private int[] keyMasks;
+    private int frames;
+
+    /*
+        Environments from .. to - 1, stepped by one thread.
+     */
+    private class Slice extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        Slice(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            for (int i = from; i < to; ++i) {
+                Environment environment = environments[i];
+                environment.step(keyMasks[i], frames);
+                publish(i);
+            }
+        }
+    }
+
+    /***
+     * The reward function of every environment is made by the supplier.
+     */
+    public VectorEnvironment(int size, byte[] program, int cyclesPerFrame,
+                             Supplier<RewardFunction> rewardFunctions, int threads) {
+        if (size <= 0 || threads <= 0)
+            throw new IllegalArgumentException("size: " + size + ", threads: " + threads);
+
+        environments = new Environment[size];
+        for (int i = 0; i < size; ++i)
+            environments[i] = new Environment(program, cyclesPerFrame, rewardFunctions.get());
+
+        int observationsSize = size * Environment.OBSERVATION_LONGS * 8;
+        doneOffset = observationsSize + size * 8;
+        buffer = ByteBuffer.allocateDirect(doneOffset + size).order(ByteOrder.nativeOrder());
+
+        observations = slice(0, observationsSize).asLongBuffer();
+        rewards = slice(observationsSize, size * 8).asDoubleBuffer();
+
+        threads = Math.min(threads, size);
+        pool = new ForkJoinPool(threads);
+        slices = new Slice[threads];
+        for (int i = 0; i < threads; ++i)
+            slices[i] = new Slice(i * size / threads, (i + 1) * size / threads);
+
+        all = new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(slices);
+            }
+        };
+    }
+
+    public VectorEnvironment(int size, byte[] program, Supplier<RewardFunction> rewardFunctions) {
+        this(size, program, CHIP8.DEFAULT_CYCLES_PER_FRAME, rewardFunctions,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    private ByteBuffer slice(int offset, int length) {
+        ByteBuffer result = buffer.duplicate();
+        result.position(offset).limit(offset + length);
+        return result.slice().order(ByteOrder.nativeOrder());
+    }
+
+    public int size() {
+        return environments.length;
+    }
+
+    public Environment getEnvironment(int i) {
+        return environments[i];
+    }
+
+    public boolean isDone(int i) {
+        return buffer.get(doneOffset + i) != 0;
+    }
+
+    /***
+     * The fault which ended the episode of environment i, null if none.
+     */
+    public String getError(int i) {
+        return environments[i].getError();
+    }
+
+    /***
+     * Resets every environment, environment i with the seed seed + i.
+     */
+    public void reset(long seed) {
+        for (int i = 0; i < environments.length; ++i)
+            reset(i, seed + i);
+    }
+
+    /***
+     * Resets one environment, e.g. once its episode is over.
+     */
+    public void reset(int i, long seed) {
+        environments[i].reset(seed);
+        publish(i);
+    }
+
+    /***
+     * Steps every environment, environment i with the keys of keyMasks[i],
+     * and returns when all are done. The results are then in the buffer.
+     * Every environment has to be reset first.
+     */
+    public void step(int[] keyMasks, int frames) {
+        if (keyMasks.length != environments.length)
+            throw new IllegalArgumentException("keyMasks: " + keyMasks.length + ", size: " + environments.length);
+        for (Environment environment : environments) {
+            if (!environment.isStarted())
+                throw new IllegalStateException("reset() not called");
+        }
+
+        this.keyMasks = keyMasks;
+        this.frames = frames;
+
+        for (Slice slice : slices)
+            slice.reinitialize();
+        all.reinitialize();
+
+        pool.invoke(all);
+    }
+
+    // writes the results of environment i to the buffer
+    private void publish(int i) {
+        Environment environment = environments[i];
+
+        long[] observation = environment.getObservation();
+        int offset = i * Environment.OBSERVATION_LONGS;
+        for (int y = 0; y < observation.length; ++y)
+            observations.put(offset + y, observation[y]);
+
+        rewards.put(i, environment.getReward());
+        buffer.put(doneOffset + i, (byte) (environment.isDone() ? 1 : 0));
+    }
+
+    /***
+     * Stops the threads and closes the environments.
+     */
+    public void shutdown() {
+        pool.shutdown();
+        for (Environment environment : environments)
+            environment.close();
+    }
+}
@@ -0,0 +1,187 @@
+package chip8;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BatchEngineTest {
+
+    // draws random digits, calls a subroutine storing their BCD and loading it back, reads keys
+    static final byte[] PROGRAM = {
+            (byte) 0xC0, 0x0F,          // 200: V0 = random digit
+            (byte) 0xC1, 0x3F,          // 202: V1 = random
+            (byte) 0xF0, 0x29,          // 204: I = font of V0
+            (byte) 0xD1, 0x15,          // 206: draw at (V1, V1)
+            0x22, 0x14,                 // 208: call 0x214
+            (byte) 0xE2, (byte) 0x9E,   // 20A: skip if key V2 pressed
+            0x72, 0x01,                 // 20C: V2 += 1
+            (byte) 0x82, 0x42,          // 20E: V2 &= V4 (0x0F)
+            0x12, 0x00,                 // 210: jump 0x200
+            0x00, 0x00,                 // 212: -
+            (byte) 0xA3, 0x00,          // 214: I = 0x300
+            (byte) 0xF1, 0x33,          // 216: BCD of V1 at 0x300
+            (byte) 0xF2, 0x65,          // 218: V0..V2 = RAM[0x300..]
+            (byte) 0x81, 0x04,          // 21A: V1 += V0, carry in VF
+            (byte) 0xF1, 0x55,          // 21C: RAM[0x300..] = V0, V1
+            0x64, 0x0F,                 // 21E: V4 = 0x0F
+            0x00, (byte) 0xEE           // 220: return
+    };
+
+    static void assertSameState(CHIP8 expected, BatchEngine batch, int i) {
+        CHIP8 actual = new CHIP8();
+        batch.copyTo(i, actual.getCpu());
+
+        assertEquals(expected.memoryChecksum(), actual.memoryChecksum());
+        assertEquals(expected.screenChecksum(), actual.screenChecksum());
+    }
+
+    @Test
+    public void sameAsCHIP8() {
+        int size = 8;
+        BatchEngine batch = new BatchEngine(PROGRAM, size);
+        batch.reset(10);
+
+        CHIP8[] machines = new CHIP8[size];
+        for (int i = 0; i < size; ++i) {
+            machines[i] = new CHIP8();
+            machines[i].getCpu().setRNG(new Rng(10 + i));
+            machines[i].loadProgram(PROGRAM);
+        }
+
+        for (int frame = 0; frame < 60; ++frame) {
+            for (int i = 0; i < size; ++i) {
+                int mask = (frame + i) % 3 == 0 ? 1 << ((frame * i) % 16) : 0;
+                batch.setKeys(i, mask);
+                machines[i].getCpu().getKeyboard().setMask(mask);
+                machines[i].frame(20);
+            }
+            batch.frame(20);
+        }
+
+        for (int i = 0; i < size; ++i) {
+            assertFalse(batch.isFailed(i));
+            assertSameState(machines[i], batch, i);
+        }
+        assertTrue(batch.getOwnPages() > 0);
+    }
+
+    // a random instruction of a random family, jumping and calling within the program
+    static char randomOpcode(Random random, int programSize) {
+        if (random.nextInt(16) == 0)
+            return (char) random.nextInt(0x10000);
+
+        String family = Instruction.FAMILIES[random.nextInt(Instruction.FAMILIES.length - 1)];
+        int opcode = 0;
+        for (int digit = 0; digit < 4; ++digit) {
+            char c = family.charAt(digit);
+            int nibble = c == 'X' || c == 'Y' || c == 'N' || (digit == 1 && family.startsWith("00"))
+                    ? random.nextInt(16) : Character.digit(c, 16);
+            opcode = opcode << 4 | nibble;
+        }
+        if (family.equals("1NNN") || family.equals("2NNN") || family.equals("BNNN"))
+            opcode = opcode & 0xF000 | Memory.PROGRAM_START + random.nextInt(programSize) & ~1;
+
+        return (char) opcode;
+    }
+
+    @Test
+    public void sameAsCPUOnRandomPrograms() {
+        Random random = new Random(3);
+        int size = 4;
+        int[] masks = {0, 0x0101, 0x8000, 0x0010};
+        boolean[] executed = new boolean[Instruction.FAMILIES.length];
+
+        for (int program = 0; program < 300; ++program) {
+            byte[] rom = new byte[96];
+            for (int address = 0; address < rom.length; address += 2) {
+                char opcode = randomOpcode(random, rom.length);
+                rom[address] = (byte) (opcode >>> 8);
+                rom[address + 1] = (byte) opcode;
+            }
+
+            BatchEngine batch = new BatchEngine(rom, size);
+            batch.reset(program * size);
+            CHIP8[] machines = new CHIP8[size];
+            String[] errors = new String[size];
+            for (int i = 0; i < size; ++i) {
+                batch.setKeys(i, masks[i]);
+                machines[i] = new CHIP8();
+                machines[i].getCpu().setRNG(new Rng(program * size + i));
+                machines[i].loadProgram(rom);
+                machines[i].getCpu().getKeyboard().setMask(masks[i]);
+            }
+
+            for (int cycle = 0; cycle < 300; ++cycle) {
+                for (int i = 0; i < size; ++i) {
+                    if (errors[i] != null)
+                        continue;
+                    Memory memory = machines[i].getCpu().getMemory();
+                    if (memory.PC + 1 < Memory.RAM_SIZE)
+                        executed[CPU.decode((char) ((memory.RAM[memory.PC] & 0xFF) << 8 | memory.RAM[memory.PC + 1] & 0xFF)).family] = true;
+                    try {
+                        machines[i].cpuTick();
+                    } catch (RuntimeException e) {
+                        errors[i] = e.toString();
+                    }
+                }
+                batch.run(1);
+
+                if (cycle % 10 == 9) {
+                    batch.timersTick();
+                    for (CHIP8 machine : machines)
+                        machine.timersTick();
+                }
+
+                for (int i = 0; i < size; ++i)
+                    assertEquals("program " + program + " instance " + i + " cycle " + cycle + ": " + errors[i],
+                            errors[i] != null, batch.isFailed(i));
+            }
+
+            for (int i = 0; i < size; ++i) {
+                if (errors[i] == null)
+                    assertSameState(machines[i], batch, i);
+            }
+            batch.close();
+        }
+
+        for (int family = 0; family < executed.length; ++family)
+            assertTrue(Instruction.FAMILIES[family] + " never executed", executed[family]);
+    }
+
+    @Test
+    public void failedInstanceStops() {
+        BatchEngine batch = new BatchEngine(new byte[] {(byte) 0xFF, (byte) 0xFF}, 2);
+        batch.run(5);
+
+        assertTrue(batch.isFailed(0));
+        assertEquals("WRONG OPCODE: 65535", batch.getError(0));
+        assertEquals(Memory.PROGRAM_START, batch.getPC(0));
+
+        batch.reset(0, 0);
+        assertFalse(batch.isFailed(0));
+    }
+
+    @Test
+    public void writesDontLeakBetweenInstances() {
+        byte[] program = {
+                (byte) 0xA3, 0x00,      // 200: I = 0x300
+                0x60, 0x07,             // 202: V0 = 7
+                (byte) 0xF0, 0x55,      // 204: RAM[0x300] = V0
+                0x12, 0x06              // 206: jump to itself
+        };
+        BatchEngine batch = new BatchEngine(program, 2);
+        batch.run(3);
+        assertEquals(2, batch.getOwnPages());
+
+        batch.reset(1, 0);
+        assertEquals(7, batch.getRAM(0, 0x300));
+        assertEquals(0, batch.getRAM(1, 0x300));
+        assertEquals(1, batch.getOwnPages());
+
+        batch.reset(0, 0);
+        assertEquals(0, batch.getRAM(0, 0x300));
+        assertEquals(0, batch.getOwnPages());
+    }
+}
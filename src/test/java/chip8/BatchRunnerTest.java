@@ -0,0 +1,118 @@
+package chip8;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BatchRunnerTest {
+
+    BatchRunner runner;
+
+    // random sprites at random places, then jump back
+    static final byte[] RANDOM_SPRITES = {
+            (byte) 0xC0, 0x3F,          // 200: V0 = random & 0x3F
+            (byte) 0xC1, 0x1F,          // 202: V1 = random & 0x1F
+            (byte) 0xA0, 0x00,          // 204: I = 0x000, font
+            (byte) 0xD0, 0x15,          // 206: draw
+            0x12, 0x00                  // 208: jump 0x200
+    };
+
+    // skips the next jump while key 5 is pressed, then hits an invalid opcode
+    static final byte[] WAIT_FOR_KEY = {
+            0x60, 0x05,                 // 200: V0 = 5
+            (byte) 0xE0, (byte) 0x9E,   // 202: skip if key V0 pressed
+            0x12, 0x02,                 // 204: jump 0x202
+            (byte) 0xFF, (byte) 0xFF    // 206: invalid
+    };
+
+    @Before
+    public void initialize() {
+        runner = new BatchRunner(4);
+    }
+
+    @After
+    public void shutdown() {
+        runner.shutdown();
+    }
+
+    @Test
+    public void resultsInOrderAndReproducible() throws InterruptedException {
+        List<BatchRunner.Job> jobs = new ArrayList<>();
+        for (int seed = 0; seed < 20; ++seed)
+            jobs.add(new BatchRunner.Job("seed " + seed, RANDOM_SPRITES, seed, 30, 10));
+
+        List<BatchRunner.Result> results = runner.run(jobs);
+
+        assertEquals(jobs.size(), results.size());
+        for (int i = 0; i < jobs.size(); ++i) {
+            BatchRunner.Result result = results.get(i);
+            BatchRunner.Result serial = BatchRunner.run(jobs.get(i));
+
+            assertEquals("seed " + i, result.getName());
+            assertTrue(result.isSuccessful());
+            assertEquals(300, result.getInstructions());
+            assertEquals(serial.getScreenChecksum(), result.getScreenChecksum());
+            assertEquals(serial.getMemoryChecksum(), result.getMemoryChecksum());
+        }
+
+        assertNotEquals(results.get(0).getScreenChecksum(), results.get(1).getScreenChecksum());
+    }
+
+    @Test
+    public void inputScripts() throws InterruptedException {
+        int[] neverPressed = {0};
+        int[] pressedInFrame3 = {0, 0, 0, 1 << 5, 0};
+
+        List<BatchRunner.Result> results = runner.run(Arrays.asList(
+                new BatchRunner.Job("idle", WAIT_FOR_KEY, 0, 10, 5, neverPressed),
+                new BatchRunner.Job("pressed", WAIT_FOR_KEY, 0, 10, 5, pressedInFrame3)));
+
+        assertTrue(results.get(0).isSuccessful());
+        assertEquals(50, results.get(0).getInstructions());
+
+        assertFalse(results.get(1).isSuccessful());
+        assertTrue(results.get(1).getError().startsWith("WRONG OPCODE"));
+        assertEquals(15, results.get(1).getInstructions());
+    }
+
+    @Test
+    public void faultDoesNotAbortBatch() throws InterruptedException {
+        byte[] outOfRam = {0x1F, (byte) 0xFF}; // jump 0xFFF, the opcode there runs off RAM
+
+        List<BatchRunner.Result> results = runner.run(Arrays.asList(
+                new BatchRunner.Job("out of RAM", outOfRam, 0, 10, 5),
+                new BatchRunner.Job("sprites", RANDOM_SPRITES, 0, 10, 5)));
+
+        assertFalse(results.get(0).isSuccessful());
+        assertTrue(results.get(0).getError().contains("at PC 0x"));
+        assertTrue(results.get(1).isSuccessful());
+        assertEquals(50, results.get(1).getInstructions());
+    }
+
+    @Test
+    public void jobFromFile() throws IOException {
+        File rom = File.createTempFile("batch", ".ch8");
+        rom.deleteOnExit();
+        Files.write(rom.toPath(), RANDOM_SPRITES);
+
+        BatchRunner.Job job = BatchRunner.Job.fromFile(rom, 7, 1, 10);
+
+        assertEquals(rom.getName(), job.getName());
+        assertEquals(7, job.getSeed());
+        assertEquals(10, BatchRunner.run(job).getInstructions());
+    }
+
+    @Test(expected = IOException.class)
+    public void jobFromMissingFile() throws IOException {
+        BatchRunner.Job.fromFile(new File("no such rom.ch8"), 0, 1, 10);
+    }
+}
@@ -0,0 +1,178 @@
+package chip8;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BlockEngineTest {
+
+    private CPU cpu;
+    private Memory memory;
+    private BlockEngine blockEngine;
+
+    @Before
+    public void initialize() {
+        memory = new Memory();
+        cpu = new CPU(memory, new Keyboard(), new Screen());
+        blockEngine = new BlockEngine();
+    }
+
+    private static byte[] program(int... opcodes) {
+        byte[] result = new byte[2 * opcodes.length];
+        for (int i = 0; i < opcodes.length; ++i) {
+            result[2 * i] = (byte) (opcodes[i] >>> 8);
+            result[2 * i + 1] = (byte) opcodes[i];
+        }
+        return result;
+    }
+
+    @Test
+    public void sameResultAsInterpreter() {
+        byte[] program = program(
+                0x6000, // V0 = 0
+                0x6105, // V1 = 5
+                0xA300, // I = 0x300
+                0x7001, // V0 += 1
+                0xF033, // BCD of V0 at I
+                0xD015, // draw 5 rows at (V0, V1)
+                0x3010, // skip if V0 == 0x10
+                0x1206, // jump 0x206
+                0x1210  // jump to itself
+        );
+
+        CPU interpreted = new CPU();
+        interpreted.getMemory().loadProgram(program);
+        new Interpreter().run(interpreted, 200);
+
+        memory.loadProgram(program);
+        assertEquals(200, blockEngine.run(cpu, 200));
+
+        assertEquals(interpreted.getMemory(), memory);
+        assertEquals(interpreted.getScreen(), cpu.getScreen());
+    }
+
+    @Test
+    public void stopsAfterGivenNumberOfCycles() {
+        memory.loadProgram(program(0x6001, 0x6102, 0x6203, 0x6304));
+
+        assertEquals(2, blockEngine.run(cpu, 2));
+        assertEquals(0x204, memory.PC);
+        assertEquals(0, memory.V[2]);
+
+        assertEquals(1, blockEngine.run(cpu, 1));
+        assertEquals(3, memory.V[2]);
+    }
+
+    @Test
+    public void selfModifyingCode() {
+        memory.loadProgram(program(
+                0x6A01, // VA = 1
+                0xA200, // I = 0x200
+                0x606A, // V0 = 0x6A
+                0x6109, // V1 = 0x09
+                0xF155, // RAM[0x200] = 6A 09
+                0x1200  // jump 0x200
+        ));
+
+        blockEngine.run(cpu, 6);
+        assertEquals(1, memory.V[0xA]);
+        assertEquals(0x200, memory.PC);
+
+        blockEngine.run(cpu, 1);
+        assertEquals(9, memory.V[0xA]);
+    }
+
+    @Test
+    public void loadProgramDropsBlocks() {
+        memory.loadProgram(program(0x6A01, 0x1200));
+        blockEngine.run(cpu, 2);
+        assertTrue(blockEngine.getNumberOfBlocks() > 0);
+
+        memory.loadProgram(program(0x6A07, 0x1200));
+        assertEquals(0, blockEngine.getNumberOfBlocks());
+
+        blockEngine.run(cpu, 1);
+        assertEquals(7, memory.V[0xA]);
+    }
+
+    @Test
+    public void stopsWhileWaitingForKey() {
+        memory.loadProgram(program(0x6A01, 0xF00A, 0x6A02));
+
+        assertEquals(100, blockEngine.run(cpu, 100));
+        assertEquals(true, cpu.isWaitingForKey());
+        assertEquals(0x202, memory.PC);
+
+        cpu.getKeyboard().setKeyUp(4);
+        blockEngine.run(cpu, 2);
+        assertEquals(4, memory.V[0]);
+        assertEquals(2, memory.V[0xA]);
+    }
+
+    // frames of 100 cycles ticked one by one, without skipping anything
+    private static CPU ticked(byte[] program, int frames) {
+        CPU ticked = new CPU();
+        ticked.getMemory().loadProgram(program);
+        for (int frame = 0; frame < frames; ++frame) {
+            for (int i = 0; i < 100; ++i)
+                ticked.tick();
+            ticked.timersTick();
+        }
+        return ticked;
+    }
+
+    private void assertIdleLoopSkipped(byte[] program, Engine engine) {
+        CPU ticked = ticked(program, 10);
+
+        memory.loadProgram(program);
+        for (int frame = 0; frame < 10; ++frame) {
+            assertEquals(100, engine.run(cpu, 100));
+            cpu.timersTick();
+        }
+
+        assertEquals(ticked.getMemory(), memory);
+        assertEquals(ticked.getScreen(), cpu.getScreen());
+        assertTrue(cpu.getSkippedInstructions() > 500);
+    }
+
+    static final byte[] DELAY_LOOP = program(
+            0x6A00, // VA = 0
+            0x6003, // V0 = 3
+            0x7A01, // VA += 1
+            0xF015, // DT = V0
+            0xF107, // V1 = DT
+            0x3100, // skip if V1 == 0
+            0x1208, // jump 0x208
+            0x1204  // jump 0x204
+    );
+
+    @Test
+    public void delayLoopSkipped() {
+        assertIdleLoopSkipped(DELAY_LOOP, new Interpreter());
+        assertTrue(memory.V[0xA] > 1);
+    }
+
+    @Test
+    public void delayLoopSkippedByBlocks() {
+        assertIdleLoopSkipped(DELAY_LOOP, blockEngine);
+    }
+
+    @Test
+    public void jumpToItselfSkipped() {
+        byte[] program = program(0x6A05, 0xFA15, 0x1204);
+
+        assertIdleLoopSkipped(program, new Interpreter());
+        assertTrue(cpu.isHalted());
+    }
+
+    @Test
+    public void otherLoopsNotSkipped() {
+        memory.loadProgram(program(0x7A01, 0x1200)); // VA += 1 forever
+
+        new Interpreter().run(cpu, 100);
+        assertEquals(50, memory.V[0xA]);
+        assertEquals(0, cpu.getSkippedInstructions());
+        assertFalse(cpu.isHalted());
+    }
+}
@@ -0,0 +1,261 @@
+package chip8;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class CHIP8Test {
+
+    CHIP8 chip8;
+    Memory memory;
+
+    @Before
+    public void initialize() {
+        chip8 = new CHIP8();
+        memory = chip8.getCpu().getMemory();
+
+        // V0 = 0x20, DT = V0, then jump to itself
+        memory.loadProgram(new byte[] {0x60, 0x20, (byte) 0xF0, 0x15, 0x12, 0x04});
+    }
+
+    @Test
+    public void runFrames() {
+        assertEquals(30, chip8.runFrames(3, 10));
+        assertEquals(0x20 - 3, memory.delayTimer);
+    }
+
+    @Test
+    public void runInstructions() {
+        assertEquals(25, chip8.runInstructions(25, 10));
+        assertEquals(0x20 - 2, memory.delayTimer);
+    }
+
+    @Test
+    public void checksums() {
+        CHIP8 other = new CHIP8();
+        other.getCpu().getMemory().loadProgram(new byte[] {0x60, 0x20, (byte) 0xF0, 0x15, 0x12, 0x04});
+
+        assertEquals(other.memoryChecksum(), chip8.memoryChecksum());
+        assertEquals(other.screenChecksum(), chip8.screenChecksum());
+
+        chip8.run(1);
+        assertNotEquals(other.memoryChecksum(), chip8.memoryChecksum());
+
+        chip8.getCpu().getScreen().flipPixel(3, 4);
+        assertNotEquals(other.screenChecksum(), chip8.screenChecksum());
+    }
+
+    @Test
+    public void loadProgramFromFile() throws IOException {
+        File rom = File.createTempFile("rom", ".ch8");
+        rom.deleteOnExit();
+        Files.write(rom.toPath(), new byte[] {0x6A, 0x12});
+        chip8.getCpu().getScreen().flipPixel(3, 4);
+
+        chip8.loadProgram(rom);
+
+        assertEquals(0x6A, memory.RAM[Memory.PROGRAM_START]);
+        assertEquals(0x12, memory.RAM[Memory.PROGRAM_START + 1]);
+        assertFalse(chip8.getCpu().getScreen().getPixel(3, 4));
+    }
+
+    @Test(expected = IOException.class)
+    public void loadMissingProgram() throws IOException {
+        chip8.loadProgram(new File("no such rom.ch8"));
+    }
+
+    @Test
+    public void loadTooLargeProgram() throws IOException {
+        File rom = File.createTempFile("rom", ".ch8");
+        rom.deleteOnExit();
+        Files.write(rom.toPath(), new byte[Memory.MAX_PROGRAM_SIZE + 1]);
+
+        try {
+            chip8.loadProgram(rom);
+            fail();
+        } catch (IOException e) {
+            // the loaded program is kept
+            assertEquals(0x60, memory.RAM[Memory.PROGRAM_START]);
+        }
+    }
+
+    @Test
+    public void queuedKeysAtMatchingCycles() {
+        // counts in VA the cycles key 5 is pressed, 3 instructions per iteration
+        memory.loadProgram(new byte[] {
+                0x65, 0x05,                 // 200: V5 = 5
+                (byte) 0xE5, (byte) 0xA1,   // 202: skip if key V5 not pressed
+                0x7A, 0x01,                 // 204: VA += 1
+                0x12, 0x02                  // 206: jump 0x202
+        });
+        Keyboard keyboard = chip8.getCpu().getKeyboard();
+
+        // a frame of 301 cycles emulating the time 1000 to 4000, press held from 2500 to 2800
+        keyboard.queueKeyUp(5, 2500);
+        keyboard.queueKeyDown(5, 2800);
+        keyboard.queueKeyUp(5, 4000);
+
+        assertEquals(301, chip8.frame(301, 1000, 4000));
+        assertEquals(10, memory.V[0xA]);
+        assertEquals(false, keyboard.isPressed(5));
+
+        // the press at 4000 belongs to the next frame, applied at its start
+        chip8.frame(300, 4000, 7000);
+        assertEquals(10 + 100, memory.V[0xA]);
+    }
+
+    @Test
+    public void queuedKeysAtFrameStart() {
+        Keyboard keyboard = chip8.getCpu().getKeyboard();
+        keyboard.queueKeyUp(1, 123);
+        keyboard.queueKeyUp(2, 456);
+
+        chip8.frame(1);
+        assertEquals(1 << 1 | 1 << 2, keyboard.getMask());
+    }
+
+    @Test
+    public void idleFrames() throws IOException {
+        // DT = 5, then wait for a key
+        chip8.loadProgram(new byte[] {0x60, 0x05, (byte) 0xF0, 0x15, (byte) 0xF1, 0x0A});
+        chip8.setRewindBuffer(new RewindBuffer(20, 10));
+        chip8.startRecording(1, 10);
+
+        chip8.frame(10);
+        assertTrue(chip8.isWaitingForKey());
+        assertEquals(4, memory.delayTimer);
+
+        chip8.idleFrames(1000);
+        assertEquals(0, memory.delayTimer);
+        assertEquals(1001, chip8.getInputRecording().getFrames());
+        assertTrue(chip8.getRewindBuffer().getAvailableFrames() > 10);
+
+        chip8.rewind(19);
+        assertEquals(0, memory.delayTimer);
+
+        InputRecording recording = chip8.stopRecording();
+        CHIP8 other = new CHIP8();
+        other.loadProgram(new byte[] {0x60, 0x05, (byte) 0xF0, 0x15, (byte) 0xF1, 0x0A});
+        other.replay(recording);
+        assertEquals(chip8.memoryChecksum(), other.memoryChecksum());
+    }
+
+    @Test
+    public void idleFramesSkipped() {
+        memory.loadProgram(new byte[] {0x60, 0x03, (byte) 0xF0, 0x15, (byte) 0xF1, 0x0A});
+        chip8.frame(10);
+
+        chip8.idleFrames(Long.MAX_VALUE);
+        assertEquals(0, memory.delayTimer);
+        assertTrue(chip8.isWaitingForKey());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void idleFramesNotWaiting() {
+        chip8.idleFrames(1);
+    }
+
+    // draws random sprites, changing V, I, the screen and RAM
+    static final byte[] RANDOM_DRAWS = {
+            (byte) 0xC0, 0x3F,          // 200: V0 = random
+            (byte) 0xC1, 0x1F,          // 202: V1 = random
+            (byte) 0xF0, 0x29,          // 204: I = font of V0
+            (byte) 0xD0, 0x15,          // 206: draw
+            (byte) 0xA3, 0x00,          // 208: I = 0x300
+            (byte) 0xF1, 0x55,          // 20A: RAM[0x300..] = V0, V1
+            0x12, 0x00                  // 20C: jump 0x200
+    };
+
+    @Test
+    public void copy() {
+        chip8.getCpu().setRNG(new Rng(42));
+        chip8.loadProgram(RANDOM_DRAWS);
+        chip8.getCpu().getKeyboard().setKeyUp(5);
+        chip8.runFrames(10, 20);
+
+        CHIP8 copy = chip8.copy();
+        assertEquals(chip8.memoryChecksum(), copy.memoryChecksum());
+        assertEquals(chip8.screenChecksum(), copy.screenChecksum());
+        assertTrue(copy.getCpu().getKeyboard().isPressed(5));
+
+        // both go on the same way, independently
+        chip8.runFrames(10, 20);
+        assertNotEquals(chip8.memoryChecksum(), copy.memoryChecksum());
+        copy.runFrames(10, 20);
+        assertEquals(chip8.memoryChecksum(), copy.memoryChecksum());
+        assertEquals(chip8.screenChecksum(), copy.screenChecksum());
+    }
+
+    @Test
+    public void copyFromBranches() {
+        chip8.getCpu().setRNG(new Rng(7));
+        chip8.loadProgram(RANDOM_DRAWS);
+        chip8.runFrames(5, 20);
+
+        CHIP8 branch = chip8.copy();
+        branch.runFrames(5, 20);
+        long memoryAfter = branch.memoryChecksum();
+        long screenAfter = branch.screenChecksum();
+
+        // back to the root and the same again
+        branch.copyFrom(chip8);
+        assertEquals(chip8.memoryChecksum(), branch.memoryChecksum());
+        branch.runFrames(5, 20);
+        assertEquals(memoryAfter, branch.memoryChecksum());
+        assertEquals(screenAfter, branch.screenChecksum());
+
+        // the instructions decoded by the branch are those of the copied RAM
+        Memory root = chip8.getCpu().getMemory();
+        root.RAM[0x20C] = 0x00;
+        root.RAM[0x20D] = (byte) 0xE0; // CLS instead of the jump
+        root.notifyWrite(0x20C, 2);
+        root.PC = 0x20C;
+
+        branch.copyFrom(chip8);
+        branch.run(1);
+        assertEquals(new CHIP8().screenChecksum(), branch.screenChecksum());
+    }
+
+    @Test
+    public void stateHash() {
+        CHIP8 other = new CHIP8();
+        other.getCpu().getMemory().loadProgram(new byte[] {0x60, 0x20, (byte) 0xF0, 0x15, 0x12, 0x04});
+        chip8.getCpu().setRNG(new Rng(1));
+        other.getCpu().setRNG(new Rng(1));
+        assertEquals(other.stateHash(), chip8.stateHash());
+
+        chip8.runFrames(3, 10);
+        assertNotEquals(other.stateHash(), chip8.stateHash());
+        other.runFrames(3, 10);
+        assertEquals(other.stateHash(), chip8.stateHash());
+
+        other.getCpu().getKeyboard().setKeyUp(1);
+        assertNotEquals(other.stateHash(), chip8.stateHash());
+        other.getCpu().getKeyboard().setKeyDown(1);
+
+        other.getCpu().getScreen().flipPixel(3, 4);
+        assertNotEquals(other.stateHash(), chip8.stateHash());
+    }
+
+    @Test
+    public void stateHashFindsLoop() {
+        // V0 counts 1, 2, 3, 0, so the state repeats every 4 iterations
+        chip8.loadProgram(new byte[] {0x70, 0x01, (byte) 0x80, 0x12, 0x12, 0x00, 0x00, 0x00});
+        chip8.getCpu().getMemory().V[1] = 3;
+
+        long first = chip8.stateHash();
+        chip8.run(3);
+        assertNotEquals(first, chip8.stateHash());
+        for (int i = 0; i < 2; ++i) {
+            chip8.run(3);
+            assertNotEquals(first, chip8.stateHash());
+        }
+        chip8.run(3);
+        assertEquals(first, chip8.stateHash());
+    }
+}
@@ -1113,6 +1113,48 @@ public class CPUTest {
         memory.RAM[1] = (byte) (0x10 | 0x05);
     }
 
+    @Test
+    public void opcodeDXYNver2() {
+        basicInitialization();
+
+        memory.I = 0x300;
+        memory.RAM[memory.I] =      (byte) 0b10101010;
+        memory.RAM[memory.I + 1] =  (byte) 0b00000000;
+        memory.RAM[memory.I + 2] =  (byte) 0b01101011;
+
+        memory.PC = 0x200;
+        memory.V[0] = 62; // wraps around the right edge
+        memory.V[1] = 30; // wraps around the bottom edge
+
+        memory.RAM[0x200] = (byte) (0xD0 | 0x00);
+        memory.RAM[0x201] = (byte) (0x10 | 0x03);
+
+        cpu.tick();
+        assertEquals(0x0, memory.V[0xF]);
+        assertEquals(0x202, memory.PC);
+
+        // row 0 of the sprite at y = 30, x = 62, 63, 0, 1, ...
+        assertEquals(true, screen.getPixel(62, 30));
+        assertEquals(false, screen.getPixel(63, 30));
+        assertEquals(true, screen.getPixel(0, 30));
+        assertEquals(true, screen.getPixel(4, 30));
+        assertEquals(false, screen.getPixel(5, 30));
+
+        assertEquals(0, screen.getRow(31));
+
+        // row 2 of the sprite at y = 0
+        assertEquals(false, screen.getPixel(62, 0));
+        assertEquals(true, screen.getPixel(63, 0));
+        assertEquals(true, screen.getPixel(0, 0));
+        assertEquals(true, screen.getPixel(5, 0));
+
+        // the same sprite again erases it and collides
+        memory.PC = 0x200;
+        cpu.tick();
+        assertEquals(0x1, memory.V[0xF]);
+        assertEquals(new Screen(), screen);
+    }
+
     @Test
     public void opcodeEX9E() {
         basicInitialization();
@@ -1277,6 +1319,37 @@ public class CPUTest {
         assertEquals(PC + 2, memory.PC);
     }
 
+    @Test
+    public void waitingForKey() {
+        basicInitialization();
+
+        memory.PC = 0x0334;
+        memory.RAM[memory.PC] = (byte) 0xF3;
+        memory.RAM[memory.PC + 1] = (byte) 0x0A;
+        assertEquals(false, cpu.isWaitingForKey());
+
+        cpu.tick();
+        assertEquals(true, cpu.isWaitingForKey());
+
+        keyboard.setKeyUp(0x2);
+        cpu.tick();
+        assertEquals(false, cpu.isWaitingForKey());
+    }
+
+    @Test
+    public void waitingForKeyEndsWithStateChange() {
+        basicInitialization();
+
+        memory.PC = 0x0334;
+        memory.RAM[memory.PC] = (byte) 0xF3;
+        memory.RAM[memory.PC + 1] = (byte) 0x0A;
+        cpu.tick();
+        assertEquals(true, cpu.isWaitingForKey());
+
+        memory.PC = 0x0200; // e.g. state loaded
+        assertEquals(false, cpu.isWaitingForKey());
+    }
+
     @Test
     public void opcodeFX0Aver2() {
         basicInitialization();
@@ -1641,4 +1714,77 @@ public class CPUTest {
         assertEquals(PC + 2, memory.PC);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void selfModifyingCodeFX55() {
+        basicInitialization();
+
+        char PC = 0x0300;
+
+        // 0x300: 6A 12   VA = 0x12
+        memory.PC = PC;
+        memory.RAM[PC] = (byte) 0x6A;
+        memory.RAM[PC + 1] = (byte) 0x12;
+
+        cpu.tick();
+        assertEquals(0x12, memory.V[0xA]);
+
+        // overwrite 0x300 with 6A 34 through FX55
+        memory.PC = 0x0400;
+        memory.RAM[0x0400] = (byte) 0xF1;
+        memory.RAM[0x0401] = (byte) 0x55;
+        memory.I = PC;
+        memory.V[0] = (byte) 0x6A;
+        memory.V[1] = (byte) 0x34;
+
+        cpu.tick();
+
+        memory.PC = PC;
+        cpu.tick();
+        assertEquals(0x34, memory.V[0xA]);
+    }
+
+    @Test
+    public void selfModifyingCodeFX33() {
+        basicInitialization();
+
+        char PC = 0x0300;
+
+        // 0x301: 6A 12   VA = 0x12, starts inside the range written below
+        memory.PC = (char) (PC + 1);
+        memory.RAM[PC + 1] = (byte) 0x6A;
+        memory.RAM[PC + 2] = (byte) 0x12;
+
+        cpu.tick();
+        assertEquals(0x12, memory.V[0xA]);
+
+        // BCD of 0x7B (123) written to 0x300: 01 02 03
+        memory.PC = 0x0400;
+        memory.RAM[0x0400] = (byte) 0xF5;
+        memory.RAM[0x0401] = (byte) 0x33;
+        memory.I = PC;
+        memory.V[5] = (byte) 123;
+
+        cpu.tick();
+
+        // 0x301: 02 03 is a machine code call, skipped
+        memory.PC = (char) (PC + 1);
+        memory.V[0xA] = 0;
+        cpu.tick();
+        assertEquals(0, memory.V[0xA]);
+        assertEquals(PC + 3, memory.PC);
+    }
+
+    @Test
+    public void loadProgramDropsDecodedInstructions() {
+        basicInitialization();
+
+        memory.loadProgram(new byte[] {(byte) 0x6A, (byte) 0x12});
+        cpu.tick();
+        assertEquals(0x12, memory.V[0xA]);
+
+        memory.loadProgram(new byte[] {(byte) 0x6B, (byte) 0x34});
+        cpu.tick();
+        assertEquals(0, memory.V[0xA]);
+        assertEquals(0x34, memory.V[0xB]);
+    }
+}
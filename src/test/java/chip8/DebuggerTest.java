@@ -0,0 +1,142 @@
+package chip8;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DebuggerTest {
+
+    CHIP8 chip8;
+    Debugger debugger;
+
+    static final byte[] PROGRAM = {
+            0x60, 0x00,                 // 200: V0 = 0
+            0x70, 0x01,                 // 202: V0 += 1
+            (byte) 0xA3, 0x00,          // 204: I = 0x300
+            (byte) 0xF0, 0x33,          // 206: BCD of V0 at 0x300
+            (byte) 0xF0, 0x65,          // 208: V0 = RAM[0x300]
+            (byte) 0xD0, 0x01,          // 20A: draw 1 line from 0x300
+            0x12, 0x02                  // 20C: jump 0x202
+    };
+
+    @Before
+    public void initialize() {
+        chip8 = new CHIP8();
+        chip8.loadProgram(PROGRAM);
+        debugger = chip8.getDebugger();
+    }
+
+    @Test
+    public void inactiveByDefault() {
+        assertFalse(debugger.isActive());
+        assertEquals(100, chip8.run(100));
+        assertFalse(debugger.isStopped());
+    }
+
+    @Test
+    public void breakpoint() {
+        debugger.addBreakpoint(0x204);
+        assertTrue(debugger.isActive());
+
+        assertEquals(2, chip8.run(100));
+        assertTrue(debugger.isStopped());
+        assertEquals(Debugger.Type.BREAKPOINT, debugger.getHit().getType());
+        assertEquals(0x204, chip8.getCpu().getMemory().PC);
+
+        // nothing runs until resumed
+        assertEquals(0, chip8.run(100));
+
+        debugger.resume();
+        assertEquals(6, chip8.run(100));
+        assertEquals(0x204, debugger.getHit().getPC());
+
+        debugger.removeBreakpoint(0x204);
+        assertFalse(debugger.isActive());
+    }
+
+    @Test
+    public void conditionalBreakpoint() {
+        // FX65 loads the hundreds of V0 back, V0 is always 1 at 0x204
+        debugger.addBreakpoint(0x204, Debugger.whenV(0, 3));
+        assertEquals(100, chip8.run(100));
+        assertFalse(debugger.isStopped());
+
+        debugger.addBreakpoint(0x206, Debugger.whenI(0x300));
+        chip8.run(100);
+        assertTrue(debugger.isStopped());
+        assertEquals(0x206, chip8.getCpu().getMemory().PC);
+    }
+
+    @Test
+    public void writeWatchpoint() {
+        debugger.watch(0x302, 0x302, Debugger.WRITE);
+
+        chip8.run(100);
+        Debugger.Hit hit = debugger.getHit();
+        assertEquals(Debugger.Type.WRITE, hit.getType());
+        assertEquals(0x206, hit.getPC());
+        assertEquals(0x302, hit.getAddress());
+        assertEquals(0, chip8.getCpu().getMemory().RAM[0x302]); // stopped before writing
+    }
+
+    @Test
+    public void readWatchpoints() {
+        debugger.watch(0x300, 0x300, Debugger.READ);
+
+        chip8.run(100);
+        assertEquals(Debugger.Type.READ, debugger.getHit().getType());
+        assertEquals(0x208, debugger.getHit().getPC());
+
+        debugger.resume();
+        chip8.run(100);
+        assertEquals(0x20A, debugger.getHit().getPC()); // the draw
+    }
+
+    @Test
+    public void sameAsWithoutDebugger() {
+        CHIP8 other = new CHIP8();
+        other.loadProgram(PROGRAM);
+
+        debugger.watch(0xF00, 0xFFF, Debugger.READ | Debugger.WRITE);
+        chip8.runFrames(10, 20);
+        other.runFrames(10, 20);
+
+        assertFalse(debugger.isStopped());
+        assertEquals(other.memoryChecksum(), chip8.memoryChecksum());
+        assertEquals(other.screenChecksum(), chip8.screenChecksum());
+    }
+
+    @Test
+    public void hitListener() {
+        List<Debugger.Hit> hits = new ArrayList<>();
+        debugger.addHitListener(hits::add);
+        debugger.unwatch(0x300, 0x310); // nothing watched yet
+        assertFalse(debugger.isActive());
+
+        debugger.watch(0x300, 0x302, Debugger.WRITE);
+        chip8.run(100);
+        assertEquals(1, hits.size());
+        assertSame(debugger.getHit(), hits.get(0));
+        assertFalse(debugger.hasBreakpoint(0x206));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void watchOutOfRange() {
+        debugger.watch(0xFFF, 0x1000, Debugger.WRITE);
+    }
+
+    @Test
+    public void clear() {
+        debugger.addBreakpoint(0x200);
+        debugger.watch(0x300, 0x310, Debugger.WRITE);
+        chip8.run(1);
+
+        debugger.clear();
+        assertFalse(debugger.isActive());
+        assertFalse(debugger.isStopped());
+    }
+}
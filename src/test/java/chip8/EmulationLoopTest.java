@@ -0,0 +1,52 @@
+package chip8;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class EmulationLoopTest {
+
+    CHIP8 chip8;
+    EmulationLoop emulationLoop;
+
+    @Before
+    public void initialize() {
+        chip8 = new CHIP8();
+        emulationLoop = new EmulationLoop(chip8);
+    }
+
+    @After
+    public void stop() {
+        emulationLoop.stop();
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.nanoTime() - deadline < 0);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void wakesUpOnKey() throws InterruptedException {
+        Memory memory = chip8.getCpu().getMemory();
+        // DT = 30, wait for a key into V1, then loop
+        chip8.loadProgram(new byte[] {0x60, 0x1E, (byte) 0xF0, 0x15, (byte) 0xF1, 0x0A, 0x12, 0x06});
+
+        emulationLoop.start();
+        emulationLoop.setRunning(true);
+        waitFor(chip8::isWaitingForKey);
+
+        // the timer still reaches zero, about half a second later
+        waitFor(() -> memory.delayTimer == 0);
+
+        chip8.getCpu().getKeyboard().queueKeyUp(7, System.nanoTime());
+        waitFor(() -> memory.PC == 0x206);
+        assertEquals(7, memory.V[1]);
+    }
+}
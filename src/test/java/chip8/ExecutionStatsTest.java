@@ -0,0 +1,143 @@
+package chip8;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.Attribute;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ExecutionStatsTest {
+
+    CHIP8 chip8;
+    ExecutionStats stats;
+
+    // draws the same sprite twice, the second time colliding, then waits in a jump to itself
+    static final byte[] PROGRAM = {
+            0x60, 0x08,                 // 200: V0 = 8
+            (byte) 0xA0, 0x00,          // 202: I = 0 (font)
+            (byte) 0xD0, 0x05,          // 204: draw
+            (byte) 0xD0, 0x05,          // 206: draw again, collision
+            0x70, 0x01,                 // 208: V0 += 1
+            0x12, 0x0C,                 // 20A: jump 0x20C
+            0x12, 0x0C                  // 20C: jump to itself
+    };
+
+    @Before
+    public void initialize() {
+        chip8 = new CHIP8();
+        chip8.loadProgram(PROGRAM);
+        stats = chip8.getStats();
+    }
+
+    @Test
+    public void disabledByDefault() {
+        chip8.runFrames(3, 10);
+
+        ExecutionStats.Counts counts = stats.snapshot();
+        assertEquals(0, counts.getInstructions());
+        assertEquals(0, counts.getTimerTicks());
+    }
+
+    @Test
+    public void counts() {
+        stats.setEnabled(true);
+        chip8.runFrames(3, 10);
+
+        ExecutionStats.Counts counts = stats.snapshot();
+        assertEquals(2, counts.getSpriteDraws());
+        assertEquals(1, counts.getCollisions());
+        assertEquals(3, counts.getTimerTicks());
+        assertEquals(2, counts.getFamilyCount("DXYN"));
+        assertEquals(1, counts.getFamilyCount("7XNN"));
+        assertEquals(1, counts.getAddressCount(0x206));
+
+        // the jump to itself runs once per frame, the rest of the frame is skipped
+        assertEquals(1 + 3, counts.getFamilyCount("1NNN"));
+        assertEquals(3, counts.getAddressCount(0x20C));
+        assertEquals(30, counts.getInstructions() + counts.getSkippedInstructions());
+
+        assertEquals(0x20C, chip8.getCpu().getMemory().PC);
+        assertEquals(9, chip8.getCpu().getMemory().V[0]);
+    }
+
+    @Test
+    public void sameStateAsWithoutStats() {
+        CHIP8 other = new CHIP8();
+        other.loadProgram(PROGRAM);
+        other.runFrames(3, 10);
+
+        stats.setEnabled(true);
+        chip8.runFrames(3, 10);
+
+        assertEquals(other.memoryChecksum(), chip8.memoryChecksum());
+        assertEquals(other.screenChecksum(), chip8.screenChecksum());
+    }
+
+    @Test
+    public void reset() {
+        stats.setEnabled(true);
+        chip8.runFrames(1, 10);
+        stats.reset();
+
+        assertEquals(0, stats.getInstructions());
+        assertEquals(0, stats.snapshot().getAddressCount(0x200));
+    }
+
+    @Test
+    public void hottestAddresses() {
+        stats.setEnabled(true);
+        chip8.runFrames(5, 10);
+
+        Map<String, Long> hottest = stats.getHottestAddresses();
+        assertEquals("0x20C", hottest.keySet().iterator().next());
+        assertEquals(7, hottest.size());
+    }
+
+    @Test
+    public void jmx() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = stats.register("ExecutionStatsTest");
+        try {
+            server.setAttribute(name, new Attribute("Enabled", true));
+            chip8.runFrames(2, 10);
+
+            assertEquals(true, stats.isEnabled());
+            assertEquals(2L, server.getAttribute(name, "SpriteDraws"));
+            assertEquals(2L, server.getAttribute(name, "TimerTicks"));
+            assertNotNull(server.getAttribute(name, "FamilyCounts"));
+
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "TimerTicks"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void jmxResetRunsOnTheCpuExecutor() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        List<Runnable> tasks = new ArrayList<>();
+        ObjectName name = stats.register("ExecutionStatsTest executor", tasks::add);
+        try {
+            stats.setEnabled(true);
+            chip8.runFrames(2, 10);
+
+            server.invoke(name, "reset", null, null);
+            assertEquals(2L, server.getAttribute(name, "TimerTicks"));
+            assertEquals(1, tasks.size());
+
+            tasks.get(0).run();
+            assertEquals(0L, server.getAttribute(name, "TimerTicks"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
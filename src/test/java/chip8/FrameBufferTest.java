@@ -0,0 +1,81 @@
+package chip8;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameBufferTest {
+
+    FrameBuffer frameBuffer;
+    Screen screen;
+
+    @Before
+    public void initialize() {
+        frameBuffer = new FrameBuffer();
+        screen = new Screen();
+    }
+
+    @Test
+    public void nothingPublished() {
+        assertNull(frameBuffer.acquire());
+    }
+
+    @Test
+    public void acquireReturnsLatestFrameOnce() {
+        screen.setPixel(0, 0);
+        frameBuffer.publish(screen);
+        screen.setPixel(0, 1);
+        frameBuffer.publish(screen);
+
+        long[] frame = frameBuffer.acquire();
+        assertEquals(Long.MIN_VALUE, frame[0]);
+        assertEquals(Long.MIN_VALUE, frame[1]);
+
+        assertNull(frameBuffer.acquire());
+    }
+
+    @Test
+    public void acquiredFrameIsNotOverwritten() {
+        screen.setPixel(5, 5);
+        frameBuffer.publish(screen);
+        long[] frame = frameBuffer.acquire();
+
+        screen.clear();
+        frameBuffer.publish(screen);
+        frameBuffer.publish(screen);
+        frameBuffer.publish(screen);
+
+        assertEquals(Long.MIN_VALUE >>> 5, frame[5]);
+        assertEquals(0L, frameBuffer.acquire()[5]);
+    }
+
+    @Test
+    public void concurrentPublishing() throws InterruptedException {
+        final int frames = 100000;
+
+        // every published frame has all rows equal to its number
+        Thread producer = new Thread(() -> {
+            for (int i = 1; i <= frames; ++i) {
+                for (int y = 0; y < Screen.HEIGHT; ++y)
+                    screen.xorRow(y, screen.getRow(y) ^ i);
+                frameBuffer.publish(screen);
+            }
+        });
+        producer.start();
+
+        long last = 0;
+        while (last != frames) {
+            long[] frame = frameBuffer.acquire();
+            if (frame == null)
+                continue;
+
+            for (int y = 0; y < Screen.HEIGHT; ++y)
+                assertEquals(frame[0], frame[y]);
+            assertTrue(frame[0] > last);
+            last = frame[0];
+        }
+
+        producer.join();
+    }
+}
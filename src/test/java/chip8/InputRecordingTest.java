@@ -0,0 +1,156 @@
+package chip8;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class InputRecordingTest {
+
+    CHIP8 chip8;
+
+    // moves a random sprite while key 5 is pressed
+    static final byte[] PROGRAM = {
+            0x62, 0x05,                 // 200: V2 = 5
+            (byte) 0xE2, (byte) 0xA1,   // 202: skip if key V2 not pressed
+            0x12, 0x0A,                 // 204: jump 0x20A
+            0x12, 0x02,                 // 206: jump 0x202
+            0x00, 0x00,                 // 208
+            (byte) 0xC0, 0x3F,          // 20A: V0 = random & 0x3F
+            (byte) 0xC1, 0x1F,          // 20C: V1 = random & 0x1F
+            (byte) 0xD0, 0x14,          // 20E: draw
+            0x12, 0x02                  // 210: jump 0x202
+    };
+
+    @Before
+    public void initialize() {
+        chip8 = new CHIP8();
+        chip8.loadProgram(PROGRAM);
+    }
+
+    private InputRecording record(long seed) {
+        Keyboard keyboard = chip8.getCpu().getKeyboard();
+
+        chip8.startRecording(seed, 9);
+        for (int frame = 0; frame < 100; ++frame) {
+            if (frame % 7 == 3)
+                keyboard.setKeyUp(5);
+            if (frame % 7 == 5)
+                keyboard.setKeyDown(5);
+
+            chip8.frame(CHIP8.DEFAULT_CYCLES_PER_FRAME); // the recording's cycles are used
+        }
+        return chip8.stopRecording();
+    }
+
+    @Test
+    public void replay() {
+        InputRecording recording = record(1234);
+        assertEquals(100, recording.getFrames());
+        assertEquals(1 << 5, recording.getMask(3));
+        assertEquals(0, recording.getMask(5));
+
+        long screenChecksum = chip8.screenChecksum();
+        long memoryChecksum = chip8.memoryChecksum();
+
+        CHIP8 other = new CHIP8();
+        other.loadProgram(PROGRAM);
+        assertEquals(900, other.replay(recording));
+
+        assertEquals(screenChecksum, other.screenChecksum());
+        assertEquals(memoryChecksum, other.memoryChecksum());
+        assertNull(other.getInputRecording());
+    }
+
+    @Test
+    public void differentSeeds() {
+        record(1);
+        long screenChecksum = chip8.screenChecksum();
+
+        record(2);
+        assertNotEquals(screenChecksum, chip8.screenChecksum());
+    }
+
+    @Test
+    public void saveAndLoad() throws IOException {
+        InputRecording recording = record(-5);
+
+        File file = File.createTempFile("chip8", ".rec");
+        try {
+            recording.save(file);
+            InputRecording loaded = InputRecording.load(file);
+
+            assertEquals(recording.getSeed(), loaded.getSeed());
+            assertEquals(recording.getCyclesPerFrame(), loaded.getCyclesPerFrame());
+            assertEquals(recording.getRomChecksum(), loaded.getRomChecksum());
+            assertArrayEquals(recording.getMasks(), loaded.getMasks());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void loadNotARecording() throws IOException {
+        File file = File.createTempFile("chip8", ".rec");
+        try {
+            new InputRecording(1, 7, 0).save(file);
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            bytes[0] = 'X';
+            Files.write(file.toPath(), bytes);
+
+            InputRecording.load(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void rewindWhileRecording() throws IOException {
+        chip8.setRewindBuffer(new RewindBuffer(100, 10));
+        record(99);
+
+        chip8.startRecording(7, 9);
+        Keyboard keyboard = chip8.getCpu().getKeyboard();
+        for (int frame = 0; frame < 50; ++frame) {
+            keyboard.setMask(frame % 3 == 0 ? 1 << 5 : 0);
+            chip8.frame(9);
+        }
+
+        chip8.rewind(20);
+        assertEquals(30, chip8.getInputRecording().getFrames());
+
+        keyboard.setMask(0);
+        chip8.runFrames(15, 9);
+        InputRecording recording = chip8.stopRecording();
+
+        CHIP8 other = new CHIP8();
+        other.loadProgram(PROGRAM);
+        other.replay(recording);
+
+        assertEquals(chip8.screenChecksum(), other.screenChecksum());
+        assertEquals(chip8.memoryChecksum(), other.memoryChecksum());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void replayOfAnotherRom() {
+        InputRecording recording = record(0);
+
+        CHIP8 other = new CHIP8();
+        other.loadProgram(new byte[] {0x12, 0x00});
+        other.replay(recording);
+    }
+
+    @Test
+    public void batchJob() {
+        InputRecording recording = record(42);
+
+        BatchRunner.Result result = BatchRunner.run(BatchRunner.Job.fromRecording("replay", PROGRAM, recording));
+
+        assertEquals(900, result.getInstructions());
+        assertEquals(chip8.screenChecksum(), result.getScreenChecksum());
+    }
+}
@@ -0,0 +1,100 @@
+package chip8;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class KeyEventQueueTest {
+
+    KeyEventQueue queue;
+    Keyboard keyboard;
+
+    @Before
+    public void initialize() {
+        queue = new KeyEventQueue(4);
+        keyboard = new Keyboard();
+    }
+
+    @Test
+    public void inOrder() {
+        assertTrue(queue.isEmpty());
+
+        assertTrue(queue.offer(3, true, 100));
+        assertTrue(queue.offer(7, true, 200));
+        assertTrue(queue.offer(3, false, 300));
+
+        assertEquals(100, queue.peekTime());
+        queue.pollInto(keyboard);
+        assertEquals(1 << 3, keyboard.getMask());
+
+        assertEquals(200, queue.peekTime());
+        queue.pollInto(keyboard);
+        assertEquals(1 << 3 | 1 << 7, keyboard.getMask());
+
+        assertEquals(300, queue.peekTime());
+        queue.pollInto(keyboard);
+        assertEquals(1 << 7, keyboard.getMask());
+
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void bounded() {
+        for (int i = 0; i < 4; ++i)
+            assertTrue(queue.offer(i, true, i));
+        assertFalse(queue.offer(4, true, 4));
+
+        queue.pollInto(keyboard);
+        assertTrue(queue.offer(4, true, 4));
+
+        for (int i = 1; i <= 4; ++i) {
+            assertEquals(i, queue.peekTime());
+            queue.pollInto(keyboard);
+        }
+        assertTrue(queue.isEmpty());
+        assertEquals(0x1F, keyboard.getMask());
+    }
+
+    @Test
+    public void concurrentProducers() throws InterruptedException {
+        KeyEventQueue queue = new KeyEventQueue(16);
+        int events = 20000;
+
+        Thread[] producers = new Thread[4];
+        for (int p = 0; p < producers.length; ++p) {
+            int key = p;
+            producers[p] = new Thread(() -> {
+                for (int i = 0; i < events; ++i)
+                    while (!queue.offer(key, i % 2 == 0, i))
+                        Thread.yield();
+            });
+            producers[p].start();
+        }
+
+        // every producer presses and releases its key in turn, so it
+        // stays consistent only if no event is lost or applied twice
+        int[] received = new int[producers.length];
+        int total = 0;
+        Keyboard keyboard = new Keyboard();
+        while (total < producers.length * events) {
+            if (queue.isEmpty()) {
+                Thread.yield();
+                continue;
+            }
+
+            int before = keyboard.getMask();
+            long time = queue.peekTime();
+            queue.pollInto(keyboard);
+            int key = Integer.numberOfTrailingZeros(before ^ keyboard.getMask());
+
+            assertEquals(received[key]++, time);
+            ++total;
+        }
+
+        for (Thread producer : producers)
+            producer.join();
+        assertTrue(queue.isEmpty());
+        assertEquals(0, keyboard.getMask());
+    }
+}
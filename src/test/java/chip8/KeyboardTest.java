@@ -78,4 +78,70 @@ public class KeyboardTest {
         assertEquals(keyboard.isPressed(4), false);
         assertEquals(keyboard.isPressed(13), false);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void mask() {
+        keyboard.setKeyUp(2);
+        keyboard.setKeyUp(15);
+        assertEquals(1 << 2 | 1 << 15, keyboard.getMask());
+
+        keyboard.setMask(1 << 4);
+        assertEquals(keyboard.isPressed(2), false);
+        assertEquals(keyboard.isPressed(4), true);
+    }
+
+    @Test
+    public void queuedKeysWaitForTheCPU() {
+        keyboard.queueKeyUp(6, 0);
+        assertEquals(keyboard.isPressed(6), false);
+
+        keyboard.getEvents().pollInto(keyboard);
+        assertEquals(keyboard.isPressed(6), true);
+    }
+
+    @Test
+    public void queueFull() {
+        for (int i = 0; i < Keyboard.QUEUE_CAPACITY; ++i)
+            keyboard.queueKeyUp(1, i);
+        assertEquals(keyboard.isPressed(2), false);
+
+        keyboard.queueKeyUp(2, Keyboard.QUEUE_CAPACITY);
+        assertEquals(keyboard.isPressed(2), false); // after the queued events
+        assertTrue(keyboard.hasOverflow());
+
+        while (!keyboard.getEvents().isEmpty())
+            keyboard.getEvents().pollInto(keyboard);
+        keyboard.applyOverflow();
+        assertEquals(keyboard.isPressed(2), true);
+        assertFalse(keyboard.hasOverflow());
+    }
+
+    @Test
+    public void queueFullKeepsOrder() {
+        CHIP8 chip8 = new CHIP8();
+        chip8.loadProgram(new byte[] {0x12, 0x00});
+        Keyboard keyboard = chip8.getCpu().getKeyboard();
+
+        keyboard.queueKeyUp(5, 0); // pressed, released once the queue is full
+        for (int i = 1; i < Keyboard.QUEUE_CAPACITY; ++i)
+            keyboard.queueKeyUp(1, i);
+        keyboard.queueKeyDown(5, Keyboard.QUEUE_CAPACITY);
+        keyboard.queueKeyUp(3, Keyboard.QUEUE_CAPACITY + 1); // still after the queued ones
+        keyboard.queueKeyDown(1, Keyboard.QUEUE_CAPACITY + 2);
+        assertEquals(0, keyboard.getMask());
+
+        chip8.frame(7, 0, 0);
+        assertEquals(1 << 3, keyboard.getMask());
+        assertFalse(keyboard.hasOverflow());
+
+        keyboard.queueKeyUp(4, 0); // queued again
+        assertFalse(keyboard.hasOverflow());
+        chip8.frame(7, 0, 0);
+        assertEquals(1 << 3 | 1 << 4, keyboard.getMask());
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void wrongKey() {
+        keyboard.isPressed(16);
+    }
+}
@@ -37,5 +37,90 @@ public class MemoryTest {
         assertEquals(memory.SP, 0);
     }
 
+    @Test
+    public void loadProgramNotifiesWriteListeners() {
+        int[] written = {0, 0};
+        memory.addWriteListener((address, length) -> {
+            written[0] = address;
+            written[1] = length;
+        });
+
+        memory.loadProgram(new byte[] {0x12, 0x34, 0x56});
+        assertEquals(0x200, written[0]);
+        assertEquals(3, written[1]);
+    }
+
+    @Test
+    public void copyFrom() {
+        Memory source = new Memory();
+        source.loadProgram(new byte[] {0x12, 0x34});
+        source.V[3] = 7;
+        source.I = 0x300;
+        source.stack[0] = 0x202;
+        source.SP = 1;
+        source.delayTimer = 9;
+
+        int[] written = {0};
+        memory.addWriteListener((address, length) -> written[0] += length);
+
+        assertEquals(0xFFFF, memory.copyFrom(source));
+        assertEquals(source, memory);
+        assertEquals(Memory.RAM_SIZE, written[0]);
+
+        source.V[3] = 8;
+        assertEquals(7, memory.V[3]);
+
+        // only pages written since are copied again
+        source.RAM[0x305] = 1;
+        source.notifyWrite(0x305, 1);
+        assertEquals(1 << 3, memory.copyFrom(source));
+        assertEquals(Memory.RAM_SIZE + Memory.PAGE_SIZE, written[0]);
+        assertEquals(1, memory.RAM[0x305]);
+        assertEquals(0, memory.copyFrom(source));
+
+        memory.RAM[0x400] = 1;
+        memory.notifyWrite(0x400, 1);
+        assertEquals(1 << 4, memory.copyFrom(source));
+        assertEquals(0, memory.RAM[0x400]);
+    }
 
-}
\ No newline at end of file
+    @Test
+    public void stateHash() {
+        Memory other = new Memory();
+        assertEquals(other.stateHash(), memory.stateHash());
+
+        long hash = memory.stateHash();
+        memory.RAM[0x345] = 9;
+        memory.notifyWrite(0x345, 1);
+        assertNotEquals(hash, memory.stateHash());
+
+        memory.RAM[0x345] = 0;
+        memory.notifyWrite(0x345, 1);
+        assertEquals(hash, memory.stateHash());
+
+        memory.V[0xF] = 1;
+        assertNotEquals(hash, memory.stateHash());
+        memory.V[0xF] = 0;
+        memory.stack[3] = 0x200;
+        assertNotEquals(hash, memory.stateHash());
+        memory.stack[3] = 0;
+        memory.PC = 0x200;
+        assertNotEquals(hash, memory.stateHash());
+        memory.PC = 0;
+        assertEquals(hash, memory.stateHash());
+    }
+
+    @Test
+    public void stateHashOfCopy() {
+        Memory source = new Memory();
+        source.loadProgram(new byte[] {0x12, 0x34, 0x56});
+        source.stateHash();
+
+        memory.copyFrom(source);
+        assertEquals(source.stateHash(), memory.stateHash());
+
+        memory.RAM[0x200] = 0;
+        memory.notifyWrite(0x200, 1);
+        assertNotEquals(source.stateHash(), memory.stateHash());
+    }
+}
@@ -0,0 +1,135 @@
+package chip8;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RewindBufferTest {
+
+    CHIP8 chip8;
+    List<byte[]> states;
+
+    // draws a counter with BCD (written to RAM) and random sprites, forever
+    static final byte[] PROGRAM = {
+            0x6A, 0x00,                 // 200: VA = 0
+            0x7A, 0x01,                 // 202: VA += 1
+            (byte) 0xA3, 0x00,          // 204: I = 0x300
+            (byte) 0xFA, 0x33,          // 206: BCD of VA at 0x300
+            (byte) 0xC0, 0x3F,          // 208: V0 = random & 0x3F
+            (byte) 0xC1, 0x1F,          // 20A: V1 = random & 0x1F
+            (byte) 0xD0, 0x13,          // 20C: draw 3 rows at (V0, V1)
+            (byte) 0xF0, 0x15,          // 20E: DT = V0
+            0x12, 0x02                  // 210: jump 0x202
+    };
+
+    @Before
+    public void initialize() {
+        chip8 = new CHIP8();
+        chip8.getCpu().getRNG().setState(42);
+        chip8.getCpu().getMemory().loadProgram(PROGRAM);
+        states = new ArrayList<>();
+    }
+
+    private byte[] state() {
+        ByteBuffer buffer = ByteBuffer.allocate(Snapshot.SIZE);
+        Snapshot.write(chip8.getCpu(), buffer);
+        return buffer.array();
+    }
+
+    private void runFrames(int frames) {
+        for (int i = 0; i < frames; ++i) {
+            chip8.frame(13);
+            states.add(state());
+        }
+    }
+
+    @Test
+    public void rewindToEveryFrame() throws IOException {
+        RewindBuffer rewindBuffer = new RewindBuffer(100, 8);
+        chip8.setRewindBuffer(rewindBuffer);
+        runFrames(50);
+        assertEquals(50, rewindBuffer.getAvailableFrames());
+
+        rewindBuffer.rewind(20, chip8.getCpu());
+        assertArrayEquals(states.get(29), state());
+        assertEquals(30, rewindBuffer.getAvailableFrames());
+
+        rewindBuffer.rewind(9, chip8.getCpu());
+        assertArrayEquals(states.get(20), state());
+        assertEquals(21, rewindBuffer.getAvailableFrames());
+    }
+
+    @Test
+    public void runAgainAfterRewind() throws IOException {
+        RewindBuffer rewindBuffer = new RewindBuffer(100, 8);
+        chip8.setRewindBuffer(rewindBuffer);
+        runFrames(30);
+
+        rewindBuffer.rewind(12, chip8.getCpu());
+        states = new ArrayList<>(states.subList(0, 18));
+        runFrames(12);
+
+        // the same frames again, RNG included
+        rewindBuffer.rewind(0, chip8.getCpu());
+        assertArrayEquals(states.get(29), state());
+
+        rewindBuffer.rewind(5, chip8.getCpu());
+        assertArrayEquals(states.get(24), state());
+    }
+
+    @Test
+    public void oldFramesAreDropped() throws IOException {
+        RewindBuffer rewindBuffer = new RewindBuffer(20, 5);
+        chip8.setRewindBuffer(rewindBuffer);
+        runFrames(53);
+
+        assertTrue(rewindBuffer.getAvailableFrames() <= 20);
+        assertTrue(rewindBuffer.getAvailableFrames() >= 16);
+
+        int oldest = rewindBuffer.getAvailableFrames() - 1;
+        rewindBuffer.rewind(oldest, chip8.getCpu());
+        assertArrayEquals(states.get(52 - oldest), state());
+    }
+
+    @Test
+    public void fullBufferKeepsMaxFrames() throws IOException {
+        RewindBuffer rewindBuffer = new RewindBuffer(100, 60);
+        chip8.setRewindBuffer(rewindBuffer);
+
+        for (int frames = 1; frames <= 250; ++frames) {
+            runFrames(1);
+            assertEquals(Math.min(frames, 100), rewindBuffer.getAvailableFrames());
+        }
+
+        rewindBuffer.rewind(99, chip8.getCpu());
+        assertArrayEquals(states.get(150), state());
+    }
+
+    @Test
+    public void smallCapacity() throws IOException {
+        RewindBuffer rewindBuffer = new RewindBuffer(1000, 10, 3 * (Snapshot.SIZE + 1) + 100);
+        chip8.setRewindBuffer(rewindBuffer);
+        runFrames(200);
+
+        int available = rewindBuffer.getAvailableFrames();
+        assertTrue(available > 0);
+
+        rewindBuffer.rewind(available - 1, chip8.getCpu());
+        assertArrayEquals(states.get(200 - available), state());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notAvailable() throws IOException {
+        RewindBuffer rewindBuffer = new RewindBuffer(100, 8);
+        chip8.setRewindBuffer(rewindBuffer);
+        runFrames(3);
+
+        rewindBuffer.rewind(3, chip8.getCpu());
+    }
+}
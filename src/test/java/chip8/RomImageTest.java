@@ -0,0 +1,108 @@
+package chip8;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RomImageTest {
+
+    private static final byte[] PROGRAM = {0x60, 0x05, (byte) 0xA3, 0x00, (byte) 0xF0, 0x33, 0x12, 0x06};
+
+    @Test
+    public void acquireAndRelease() {
+        int images = RomImage.getImages();
+
+        RomImage image = RomImage.acquire(PROGRAM);
+        assertSame(image, RomImage.acquire(PROGRAM.clone()));
+        assertEquals(2, image.getReferences());
+        assertEquals(images + 1, RomImage.getImages());
+        assertNotSame(image, RomImage.acquire(new byte[] {0x12, 0x00}));
+        assertEquals(images + 2, RomImage.getImages());
+        RomImage.acquire(new byte[] {0x12, 0x00}).release();
+        RomImage.acquire(new byte[] {0x12, 0x00}).release();
+        assertEquals(images + 2, RomImage.getImages());
+
+        image.release();
+        image.release();
+        assertEquals(0, image.getReferences());
+        assertNotSame(image, RomImage.acquire(PROGRAM));
+        RomImage.acquire(PROGRAM).release();
+        RomImage.acquire(PROGRAM).release();
+
+        try {
+            image.release();
+            fail();
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void pagesAreShared() {
+        RomImage image = RomImage.acquire(PROGRAM);
+        RomImage other = RomImage.acquire(new byte[] {0x12, 0x00});
+
+        assertSame(image.getPage(0), other.getPage(0)); // fonts
+        assertSame(image.getPage(1), image.getPage(15));
+        assertSame(image.getPage(1), other.getPage(3));
+        assertNotSame(image.getPage(2), other.getPage(2));
+        assertEquals(0x60, image.getPage(2)[0]);
+
+        image.release();
+        other.release();
+    }
+
+    @Test
+    public void load() {
+        RomImage image = RomImage.acquire(PROGRAM);
+        Memory expected = new Memory();
+        expected.loadProgram(PROGRAM);
+
+        Memory memory = new Memory();
+        memory.V[3] = 1;
+        memory.SP = 2;
+        memory.RAM[0x345] = 1;
+        memory.notifyWrite(0x345, 1);
+
+        int[] written = {0};
+        memory.addWriteListener((address, length) -> written[0] += length);
+        memory.load(image);
+        assertEquals(expected, memory);
+
+        // loading again copies only the pages written since
+        written[0] = 0;
+        memory.load(image);
+        assertEquals(0, written[0]);
+
+        memory.RAM[0x301] = 9;
+        memory.notifyWrite(0x301, 1);
+        written[0] = 0;
+        memory.load(image);
+        assertEquals(Memory.PAGE_SIZE, written[0]);
+        assertEquals(expected, memory);
+
+        // memories loaded from an image copy nothing between them
+        Memory other = new Memory();
+        other.load(image);
+        assertEquals(0, memory.copyFrom(other));
+
+        image.release();
+    }
+
+    @Test
+    public void chip8Reset() {
+        RomImage image = RomImage.acquire(PROGRAM);
+        CHIP8 chip8 = new CHIP8();
+        chip8.load(image);
+        chip8.runInstructions(20, CHIP8.DEFAULT_CYCLES_PER_FRAME);
+        assertEquals(5, chip8.getCpu().getMemory().RAM[0x302]);
+
+        CHIP8 expected = new CHIP8();
+        expected.loadProgram(PROGRAM);
+        expected.reset(7);
+        chip8.reset(7);
+        assertEquals(expected.stateHash(), chip8.stateHash());
+        assertEquals(expected.memoryChecksum(), chip8.memoryChecksum());
+
+        image.release();
+    }
+}
@@ -71,4 +71,57 @@ public class ScreenTest {
         screen.flipPixel(x, y);
         assertEquals(screen.getPixel(x, y), true);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void xorRow() {
+        long bits = 0xF000_0000_0000_000FL;
+
+        assertEquals(false, screen.xorRow(7, bits));
+        assertEquals(bits, screen.getRow(7));
+        assertEquals(true, screen.getPixel(0, 7));
+        assertEquals(true, screen.getPixel(63, 7));
+        assertEquals(false, screen.getPixel(4, 7));
+
+        assertEquals(true, screen.xorRow(7, 0x1000_0000_0000_0000L));
+        assertEquals(false, screen.getPixel(3, 7));
+
+        assertEquals(false, screen.xorRow(7, 0x0100_0000_0000_0000L));
+        assertEquals(true, screen.getPixel(7, 7));
+    }
+
+    @Test
+    public void copyRows() {
+        screen.setPixel(0, 0);
+        screen.setPixel(63, 31);
+
+        long[] rows = new long[Screen.HEIGHT];
+        screen.copyRows(rows);
+
+        assertEquals(Long.MIN_VALUE, rows[0]);
+        assertEquals(1L, rows[31]);
+        assertEquals(0L, rows[15]);
+    }
+
+    @Test
+    public void takeDirtyRows() {
+        assertEquals(0, screen.takeDirtyRows());
+
+        screen.setPixel(3, 2);
+        screen.xorRow(31, 0x0F);
+        assertEquals(true, screen.isDirty());
+        assertEquals((1 << 2) | (1 << 31), screen.takeDirtyRows());
+
+        assertEquals(false, screen.isDirty());
+        assertEquals(0, screen.takeDirtyRows());
+
+        screen.setPixel(3, 2); // already set
+        screen.xorRow(5, 0);
+        assertEquals(0, screen.takeDirtyRows());
+
+        screen.clear();
+        assertEquals((1 << 2) | (1 << 31), screen.takeDirtyRows());
+
+        screen.clear();
+        assertEquals(0, screen.takeDirtyRows());
+    }
+}
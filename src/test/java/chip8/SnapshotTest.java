@@ -0,0 +1,105 @@
+package chip8;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class SnapshotTest {
+
+    CPU cpu;
+
+    @Before
+    public void initialize() {
+        cpu = new CPU();
+        Memory memory = cpu.getMemory();
+
+        memory.loadProgram(new byte[] {0x12, 0x34, 0x56, 0x78});
+        memory.V[3] = 0x42;
+        memory.I = 0x321;
+        memory.PC = 0x234;
+        memory.stack[1] = 0x246;
+        memory.SP = 1;
+        memory.delayTimer = 17;
+        memory.soundTimer = 3;
+
+        cpu.getKeyboard().setKeyUp(0xA);
+        cpu.getScreen().setPixel(63, 31);
+        cpu.getScreen().setPixel(0, 0);
+        cpu.getRNG().setState(1234567);
+    }
+
+    private static void assertSameState(CPU expected, CPU actual) {
+        assertEquals(expected.getMemory(), actual.getMemory());
+        assertEquals(expected.getKeyboard(), actual.getKeyboard());
+        assertEquals(expected.getScreen(), actual.getScreen());
+        assertEquals(expected.getRNG().getState(), actual.getRNG().getState());
+    }
+
+    @Test
+    public void writeAndRead() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Snapshot.SIZE);
+        Snapshot.write(cpu, buffer);
+        assertEquals(Snapshot.SIZE, buffer.position());
+
+        buffer.flip();
+        CPU restored = new CPU();
+        Snapshot.read(buffer, restored);
+
+        assertSameState(cpu, restored);
+        assertEquals(true, restored.getKeyboard().isPressed(0xA));
+    }
+
+    @Test
+    public void saveAndLoad() throws IOException {
+        File file = File.createTempFile("chip8", ".sav");
+        try {
+            Snapshot.save(cpu, file);
+            assertEquals(Snapshot.SIZE, file.length());
+
+            CPU restored = new CPU();
+            Snapshot.load(file, restored);
+            assertSameState(cpu, restored);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void loadedCodeIsExecuted() throws IOException {
+        cpu.getMemory().RAM[0x234] = 0x6A;
+        cpu.getMemory().RAM[0x235] = 0x11;
+
+        ByteBuffer buffer = ByteBuffer.allocate(Snapshot.SIZE);
+        Snapshot.write(cpu, buffer);
+        buffer.flip();
+
+        CPU restored = new CPU();
+        restored.getMemory().PC = 0x234;
+        restored.tick(); // decodes the zeroed RAM at 0x234
+
+        Snapshot.read(buffer, restored);
+        restored.tick();
+
+        assertEquals(0x11, restored.getMemory().V[0xA]);
+    }
+
+    @Test(expected = IOException.class)
+    public void notASnapshot() throws IOException {
+        Snapshot.read(ByteBuffer.allocate(Snapshot.SIZE), new CPU());
+    }
+
+    @Test(expected = IOException.class)
+    public void truncated() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Snapshot.SIZE);
+        Snapshot.write(cpu, buffer);
+        buffer.flip();
+        buffer.limit(100);
+
+        Snapshot.read(buffer, new CPU());
+    }
+}
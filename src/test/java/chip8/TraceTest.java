@@ -0,0 +1,153 @@
+package chip8;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class TraceTest {
+
+    CHIP8 chip8;
+    File file;
+
+    static final byte[] PROGRAM = {
+            0x60, (byte) 0xFF,          // 200: V0 = 0xFF
+            0x61, 0x02,                 // 202: V1 = 2
+            (byte) 0x80, 0x14,          // 204: V0 += V1, VF = carry
+            (byte) 0xA3, 0x00,          // 206: I = 0x300
+            0x12, 0x08                  // 208: jump to itself
+    };
+
+    @Before
+    public void initialize() throws IOException {
+        chip8 = new CHIP8();
+        chip8.loadProgram(PROGRAM);
+        file = File.createTempFile("chip8", ".trace");
+    }
+
+    @After
+    public void cleanUp() throws IOException {
+        chip8.stopTrace();
+        file.delete();
+    }
+
+    @Test
+    public void full() throws IOException {
+        chip8.startTrace(file, false);
+        assertTrue(chip8.isTracing());
+        chip8.run(6);
+        chip8.stopTrace();
+        assertFalse(chip8.isTracing());
+
+        try (TraceReader reader = new TraceReader(file)) {
+            assertFalse(reader.isDelta());
+            assertEquals(6, reader.getRecords());
+
+            TraceReader.Entry entry = reader.read();
+            assertEquals(0x200, entry.getPC());
+            assertEquals(0x60FF, entry.getOpcode());
+            assertEquals(1, entry.getChangedRegisters());
+            assertEquals(0xFF, entry.getV(0));
+
+            entry = reader.read();
+            assertEquals(0xFF, entry.getV(0)); // all registers are kept
+            assertEquals(2, entry.getV(1));
+
+            entry = reader.read();
+            assertEquals(0x8001, entry.getChangedRegisters());
+            assertEquals(1, entry.getV(0));
+            assertEquals(1, entry.getV(0xF));
+
+            assertEquals(0x300, reader.read().getI());
+
+            // the jump to itself is traced every time, not skipped
+            assertEquals(0x208, reader.read().getPC());
+            assertEquals(0x208, reader.read().getPC());
+            assertNull(reader.read());
+        }
+
+        assertEquals(TraceWriter.HEADER_SIZE + 6 * TraceWriter.FULL_RECORD_SIZE, file.length());
+    }
+
+    @Test
+    public void delta() throws IOException {
+        chip8.startTrace(file, true);
+        chip8.run(5);
+        chip8.stopTrace();
+
+        try (TraceReader reader = new TraceReader(file)) {
+            assertTrue(reader.isDelta());
+            assertEquals(6, reader.getRecords()); // one more for VF
+
+            assertEquals(1, reader.read().getChangedRegisters());
+            assertEquals(2, reader.read().getChangedRegisters());
+
+            TraceReader.Entry entry = reader.read();
+            assertEquals(0x204, entry.getPC());
+            assertEquals(0x8001, entry.getChangedRegisters());
+            assertEquals(1, entry.getV(0));
+            assertEquals(1, entry.getV(0xF));
+
+            entry = reader.read();
+            assertEquals(0, entry.getChangedRegisters());
+            assertEquals(0x300, entry.getI());
+
+            assertEquals(0x208, reader.read().getPC());
+            assertNull(reader.read());
+        }
+    }
+
+    @Test
+    public void sameStateAsWithoutTrace() throws IOException {
+        CHIP8 other = new CHIP8();
+        other.loadProgram(PROGRAM);
+
+        chip8.startTrace(file, true);
+        chip8.runFrames(10, 20);
+        other.runFrames(10, 20);
+
+        assertEquals(other.memoryChecksum(), chip8.memoryChecksum());
+    }
+
+    @Test
+    public void paddedAsWhenNotTruncated() throws IOException {
+        chip8.startTrace(file, true);
+        chip8.run(5);
+        chip8.stopTrace();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(TraceWriter.CHUNK_SIZE);
+        }
+
+        try (TraceReader reader = new TraceReader(file)) {
+            for (int i = 0; i < 5; ++i)
+                assertNotNull(reader.read());
+            assertNull(reader.read());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void truncated() throws IOException {
+        chip8.startTrace(file, false);
+        chip8.run(6);
+        chip8.stopTrace();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+        new TraceReader(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void notATrace() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(new byte[64]);
+        }
+        new TraceReader(file);
+    }
+}
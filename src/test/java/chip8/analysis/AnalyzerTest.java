@@ -0,0 +1,107 @@
+package chip8.analysis;
+
+import chip8.Memory;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AnalyzerTest {
+
+    static final byte[] PROGRAM = {
+            (byte) 0xA2, 0x10,          // 200: I = 0x210 (sprite)
+            0x22, 0x0C,                 // 202: call 0x20C
+            0x30, 0x01,                 // 204: skip if V0 == 1
+            0x12, 0x04,                 // 206: jump 0x204
+            0x12, 0x0A,                 // 208: jump 0x20A
+            (byte) 0xFF, (byte) 0xFF,   // 20A: invalid, reached by the jump above
+            (byte) 0xD0, 0x15,          // 20C: draw
+            0x00, (byte) 0xEE,          // 20E: return
+            (byte) 0xF0, (byte) 0x90, (byte) 0x90, (byte) 0x90, (byte) 0xF0, // 210: sprite
+            0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+            0x12, 0x00                  // 225: never reached
+    };
+
+    @Test
+    public void regions() {
+        RomAnalysis analysis = Analyzer.analyze(PROGRAM);
+
+        assertEquals(Region.CODE, analysis.getRegion(0x200));
+        assertEquals(Region.CODE, analysis.getRegion(0x20F));
+        assertEquals(Region.DATA, analysis.getRegion(0x210));
+        assertEquals(Region.DATA, analysis.getRegion(0x21F));
+        assertEquals(Region.UNREACHABLE, analysis.getRegion(0x220));
+        assertEquals(Region.UNREACHABLE, analysis.getRegion(0x225));
+        assertEquals(16, analysis.countBytes(Region.CODE));
+        assertEquals(Analyzer.DATA_LENGTH, analysis.countBytes(Region.DATA));
+    }
+
+    @Test
+    public void invalidOpcodes() {
+        RomAnalysis analysis = Analyzer.analyze(PROGRAM);
+
+        assertArrayEquals(new int[] {0x20A}, analysis.getInvalidOpcodes());
+        assertFalse(analysis.getInstruction(0x20A).isValid());
+    }
+
+    @Test
+    public void blocks() {
+        RomAnalysis analysis = Analyzer.analyze(PROGRAM);
+
+        // 200-202 | 204 | 206 | 208-20A (jumping to the next instruction runs on) | 20C-20E
+        assertEquals(5, analysis.getBlocks().size());
+
+        BasicBlock entry = analysis.getBlockAt(0x200);
+        assertEquals(0x204, entry.getEnd());
+        assertArrayEquals(new int[] {0x20C, 0x204}, entry.getSuccessors());
+
+        assertArrayEquals(new int[] {0x206, 0x208}, analysis.getBlockAt(0x204).getSuccessors());
+        assertArrayEquals(new int[] {0x204}, analysis.getBlockAt(0x206).getSuccessors());
+        assertArrayEquals(new int[0], analysis.getBlockAt(0x208).getSuccessors());
+        assertNull(analysis.getBlockAt(0x20A));
+
+        BasicBlock subroutine = analysis.getBlockAt(0x20C);
+        assertEquals(2, subroutine.getInstructions().length);
+        assertEquals("00EE", subroutine.getLastInstruction().getFamilyName());
+        assertNull(analysis.getBlockAt(0x20E));
+    }
+
+    @Test
+    public void indirectAndExternal() {
+        byte[] program = {
+                0x30, 0x00,             // 200: skip if V0 == 0
+                (byte) 0xB2, 0x00,      // 202: jump 0x200 + V0
+                0x60, 0x01              // 204: V0 = 1, then runs past the end
+        };
+        RomAnalysis analysis = Analyzer.analyze(program);
+
+        assertArrayEquals(new int[] {0x202}, analysis.getIndirectJumps());
+        assertArrayEquals(new int[] {0x206}, analysis.getExternalTargets());
+        assertEquals(0, analysis.countBytes(Region.UNREACHABLE));
+    }
+
+    @Test
+    public void oddAddresses() {
+        byte[] program = {
+                0x12, 0x03,             // 200: jump 0x203
+                0x00, 0x12, 0x03        // 203: jump 0x203
+        };
+        RomAnalysis analysis = Analyzer.analyze(program);
+
+        assertTrue(analysis.isCode(0x203));
+        assertEquals(Region.UNREACHABLE, analysis.getRegion(0x202));
+        assertArrayEquals(new int[] {0x203}, analysis.getBlockAt(0x203).getSuccessors());
+    }
+
+    @Test
+    public void empty() {
+        RomAnalysis analysis = Analyzer.analyze(new byte[0]);
+
+        assertTrue(analysis.getBlocks().isEmpty());
+        assertArrayEquals(new int[] {Memory.PROGRAM_START}, analysis.getExternalTargets());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooLarge() {
+        Analyzer.analyze(new byte[Memory.MAX_PROGRAM_SIZE + 1]);
+    }
+}
@@ -0,0 +1,35 @@
+package chip8.analysis;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DisassemblerTest {
+
+    @Test
+    public void disassemble() {
+        assertEquals("CLS", Disassembler.disassemble((char) 0x00E0));
+        assertEquals("JP 0x2A4", Disassembler.disassemble((char) 0x12A4));
+        assertEquals("LD V3, 0x0F", Disassembler.disassemble((char) 0x630F));
+        assertEquals("ADD VA, VB", Disassembler.disassemble((char) 0x8AB4));
+        assertEquals("DRW V0, V1, 5", Disassembler.disassemble((char) 0xD015));
+        assertEquals("LD V2, [I]", Disassembler.disassemble((char) 0xF265));
+        assertEquals("DW 0xFFFF ; invalid", Disassembler.disassemble((char) 0xFFFF));
+    }
+
+    @Test
+    public void listing() {
+        byte[] program = {
+                (byte) 0xA2, 0x04,      // 200: I = 0x204
+                0x12, 0x02,             // 202: jump to itself
+                (byte) 0xF0,            // 204: data
+                0x00                    // 205: data
+        };
+        String listing = Disassembler.listing(program, Analyzer.analyze(program));
+
+        assertTrue(listing.contains("200  A204  LD I, 0x204"));
+        assertTrue(listing.contains("202  1202  JP 0x202"));
+        assertTrue(listing.contains("204  F0    DB 0xF0"));
+        assertFalse(listing.contains("unreachable"));
+    }
+}
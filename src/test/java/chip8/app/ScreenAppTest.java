@@ -3,10 +3,12 @@ package chip8.app;
 import chip8.CHIP8;
 import chip8.Screen;
 import chip8.app.screen.ScreenApp;
-import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelReader;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.*;
+
 public class ScreenAppTest {
 
     double widthOfScreenApp = 800;
@@ -24,7 +26,6 @@ public class ScreenAppTest {
     @Test
     public void render() {
         screenApp.render();
-        GraphicsContext gcActual =  screenApp.getGraphicsContext2D();
 
         Screen screen = chip8.getCpu().getScreen();
         int x = 3;
@@ -33,4 +34,56 @@ public class ScreenAppTest {
 
         screenApp.render();
     }
-}
\ No newline at end of file
+
+    private int colorAt(int x, int y) {
+        PixelReader pixelReader = screenApp.getImage().getPixelReader();
+        return pixelReader.getArgb((int) ((x + 0.5) * screenApp.getImage().getWidth() / Screen.WIDTH),
+                (int) ((y + 0.5) * screenApp.getImage().getHeight() / Screen.HEIGHT));
+    }
+
+    @Test
+    public void renderToImage() {
+        Screen screen = chip8.getCpu().getScreen();
+        screen.setPixel(3, 12);
+        screen.setPixel(63, 31);
+        screenApp.render();
+
+        int on = colorAt(3, 12);
+        int off = colorAt(4, 12);
+        assertNotEquals(on, off);
+        assertEquals(on, colorAt(63, 31));
+        assertEquals(off, colorAt(0, 0));
+        assertEquals(off, colorAt(3, 11));
+
+        screen.flipPixel(3, 12);
+        screen.setPixel(40, 5);
+        screenApp.render();
+        assertEquals(off, colorAt(3, 12));
+        assertEquals(on, colorAt(40, 5));
+        assertEquals(on, colorAt(63, 31));
+    }
+
+    @Test
+    public void scaledByTheView() {
+        assertEquals(Screen.WIDTH, screenApp.getImage().getWidth(), 0);
+        assertEquals(Screen.HEIGHT, screenApp.getImage().getHeight(), 0);
+        assertEquals(widthOfScreenApp, screenApp.getFitWidth(), 0);
+        assertEquals(heightOfScreenApp, screenApp.getFitHeight(), 0);
+        assertFalse(screenApp.isSmooth());
+    }
+
+    @Test
+    public void renderFrame() {
+        long[] rows = new long[Screen.HEIGHT];
+        rows[7] = Long.MIN_VALUE; // x = 0
+        screenApp.render(rows);
+
+        int on = colorAt(0, 7);
+        assertNotEquals(on, colorAt(1, 7));
+
+        rows[7] = 1; // x = 63
+        screenApp.render(rows);
+        assertEquals(on, colorAt(63, 7));
+        assertNotEquals(on, colorAt(0, 7));
+    }
+}
@@ -0,0 +1,123 @@
+package chip8.env;
+
+import chip8.CHIP8;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EnvironmentTest {
+
+    // draws the font digit of the key pressed at a random position, counting the draws in V2.
+    // An iteration is 7 instructions, one frame in the tests.
+    static final byte[] PROGRAM = {
+            (byte) 0xF0, 0x0A,          // 200: V0 = key, waits
+            (byte) 0xF0, 0x29,          // 202: I = font of V0
+            (byte) 0xC1, 0x1F,          // 204: V1 = random
+            (byte) 0xD1, 0x15,          // 206: draw at (V1, V1)
+            0x72, 0x01,                 // 208: V2 += 1
+            0x32, 0x05,                 // 20A: skip if V2 == 5
+            0x12, 0x00,                 // 20C: jump 0x200
+            (byte) 0xFF, (byte) 0xFF    // 20E: invalid
+    };
+
+    // the number of draws, the episode ends after 3
+    static class Draws implements RewardFunction {
+
+        int previous = 0;
+
+        @Override
+        public double reward(CHIP8 chip8) {
+            int draws = chip8.getCpu().getMemory().V[2];
+            double reward = draws - previous;
+            previous = draws;
+            return reward;
+        }
+
+        @Override
+        public boolean isDone(CHIP8 chip8) {
+            return previous >= 3;
+        }
+
+        @Override
+        public void reset(CHIP8 chip8) {
+            previous = 0;
+        }
+    }
+
+    Environment environment;
+
+    @Before
+    public void initialize() {
+        environment = new Environment(PROGRAM, 7, new Draws());
+    }
+
+    @Test
+    public void reset() {
+        environment.reset(1);
+        assertArrayEquals(new long[Environment.OBSERVATION_LONGS], environment.getObservation());
+        assertFalse(environment.isDone());
+        assertEquals(0, environment.getFrames());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void stepBeforeReset() {
+        environment.step(0, 1);
+    }
+
+    @Test
+    public void step() {
+        environment.reset(1);
+
+        assertFalse(environment.step(0, 2)); // no key, waits
+        assertEquals(0, environment.getReward(), 0);
+        assertEquals(2, environment.getFrames());
+
+        assertFalse(environment.step(1 << 7, 1));
+        assertEquals(1, environment.getReward(), 0);
+        assertNotEquals(0, environment.getChip8().screenChecksum());
+
+        long[] observation = environment.getObservation().clone();
+        long[] rows = new long[Environment.OBSERVATION_LONGS];
+        environment.getChip8().getCpu().getScreen().copyRows(rows);
+        assertArrayEquals(rows, observation);
+
+        assertFalse(environment.step(0, 1));
+        assertEquals(0, environment.getReward(), 0);
+        assertFalse(environment.step(1 << 3, 1));
+        assertTrue(environment.step(1 << 3, 1));
+
+        // over until reset
+        assertTrue(environment.step(1 << 3, 1));
+        assertEquals(0, environment.getReward(), 0);
+        environment.reset(1);
+        assertFalse(environment.isDone());
+    }
+
+    @Test
+    public void sameSeedSameEpisode() {
+        Environment other = new Environment(PROGRAM, 7, new Draws());
+        environment.reset(5);
+        other.reset(5);
+
+        for (int key = 0; key < 3; ++key) {
+            environment.step(1 << key, 1);
+            other.step(1 << key, 1);
+            environment.step(0, 1);
+            other.step(0, 1);
+        }
+        assertArrayEquals(other.getObservation(), environment.getObservation());
+    }
+
+    @Test
+    public void invalidOpcodeEndsEpisode() {
+        environment = new Environment(PROGRAM, 7, RewardFunction.NONE);
+        environment.reset(1);
+
+        boolean done = false;
+        for (int i = 0; i < 20 && !done; ++i)
+            done = environment.step(i % 2 == 0 ? 1 : 0, 1);
+
+        assertTrue(done);
+    }
+}
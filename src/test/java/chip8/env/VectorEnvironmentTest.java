@@ -0,0 +1,115 @@
+package chip8.env;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class VectorEnvironmentTest {
+
+    static final int SIZE = 10;
+
+    VectorEnvironment environments;
+
+    @Before
+    public void initialize() {
+        environments = new VectorEnvironment(SIZE, EnvironmentTest.PROGRAM, 7, EnvironmentTest.Draws::new, 3);
+    }
+
+    @After
+    public void shutdown() {
+        environments.shutdown();
+    }
+
+    @Test
+    public void buffer() {
+        ByteBuffer buffer = environments.getBuffer();
+        assertTrue(buffer.isDirect());
+        assertEquals(SIZE * (32 * 8 + 8 + 1), buffer.capacity());
+        assertEquals(SIZE * 32, environments.getObservations().capacity());
+        assertEquals(SIZE, environments.getRewards().capacity());
+    }
+
+    @Test
+    public void sameAsSingleEnvironments() {
+        environments.reset(100);
+
+        Environment[] singles = new Environment[SIZE];
+        for (int i = 0; i < SIZE; ++i) {
+            singles[i] = new Environment(EnvironmentTest.PROGRAM, 7, new EnvironmentTest.Draws());
+            singles[i].reset(100 + i);
+        }
+
+        int[] keyMasks = new int[SIZE];
+        for (int step = 0; step < 8; ++step) {
+            for (int i = 0; i < SIZE; ++i)
+                keyMasks[i] = step % 2 == 0 ? 1 << ((i + step) % 16) : 0;
+
+            environments.step(keyMasks, 1);
+
+            for (int i = 0; i < SIZE; ++i) {
+                singles[i].step(keyMasks[i], 1);
+
+                for (int y = 0; y < Environment.OBSERVATION_LONGS; ++y)
+                    assertEquals(singles[i].getObservation()[y],
+                            environments.getObservations().get(i * Environment.OBSERVATION_LONGS + y));
+                assertEquals(singles[i].getReward(), environments.getRewards().get(i), 0);
+                assertEquals(singles[i].isDone(), environments.isDone(i));
+            }
+        }
+
+        assertTrue(environments.isDone(0));
+        environments.reset(0, 7);
+        assertFalse(environments.isDone(0));
+    }
+
+    @Test
+    public void faultEndsOnlyItsEpisode() {
+        byte[] program = {
+                0x60, 0x00,                 // 200: V0 = 0
+                (byte) 0xE0, (byte) 0xA1,   // 202: skip if key V0 not pressed
+                0x1F, (byte) 0xFF,          // 204: jump 0xFFF, runs off RAM
+                0x12, 0x02                  // 206: jump 0x202
+        };
+        VectorEnvironment faulty = new VectorEnvironment(SIZE, program, 7, () -> RewardFunction.NONE, 3);
+        try {
+            faulty.reset(0);
+            int[] keyMasks = new int[SIZE];
+            keyMasks[SIZE - 1] = 1; // in the last slice
+
+            faulty.step(keyMasks, 2);
+
+            assertTrue(faulty.isDone(SIZE - 1));
+            assertNotNull(faulty.getError(SIZE - 1));
+            for (int i = 0; i < SIZE - 1; ++i) {
+                assertFalse(faulty.isDone(i));
+                assertNull(faulty.getError(i));
+                assertEquals(2, faulty.getEnvironment(i).getFrames());
+            }
+
+            faulty.reset(SIZE - 1, 0);
+            assertNull(faulty.getError(SIZE - 1));
+        } finally {
+            faulty.shutdown();
+        }
+    }
+
+    @Test
+    public void stepBeforeReset() {
+        environments.reset(1, 0); // the others aren't
+        try {
+            environments.step(new int[SIZE], 1);
+            fail();
+        } catch (IllegalStateException e) {
+        }
+        assertEquals(0, environments.getEnvironment(1).getFrames());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongNumberOfMasks() {
+        environments.step(new int[SIZE + 1], 1);
+    }
+}